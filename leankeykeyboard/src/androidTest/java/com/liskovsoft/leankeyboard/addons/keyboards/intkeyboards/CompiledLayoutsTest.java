@@ -0,0 +1,115 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+import android.text.TextUtils;
+import android.util.Log;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiled layouts should produce the same keys as the xml parser
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompiledLayoutsTest {
+    private static final String TAG = CompiledLayoutsTest.class.getSimpleName();
+    private Context mContext;
+    private Set<String> mLayoutNames;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mLayoutNames = CompiledLayouts.getLayoutNames(mContext);
+    }
+
+    @Test
+    public void testAllLayoutsCompiled() {
+        assertFalse(mLayoutNames.isEmpty());
+        assertTrue(mLayoutNames.contains("qwerty_en_us"));
+        assertTrue(mLayoutNames.contains("sym_en_us"));
+        assertTrue(mLayoutNames.contains("number"));
+        assertTrue(mLayoutNames.contains("accent_a"));
+        assertTrue(mLayoutNames.contains("shift_0"));
+    }
+
+    @Test
+    public void testSameAsXml() {
+        for (String name : mLayoutNames) {
+            int resId = getResId(name);
+
+            Keyboard expected = new Keyboard(mContext, resId);
+            Keyboard actual = CompiledLayouts.load(mContext, resId);
+
+            assertTrue(name, actual instanceof CompiledKeyboard);
+            assertEquals(name, expected.getHeight(), actual.getHeight());
+            assertEquals(name, expected.getMinWidth(), actual.getMinWidth());
+            assertEquals(name, expected.getShiftKeyIndex(), actual.getShiftKeyIndex());
+            assertEquals(name, expected.getModifierKeys().size(), actual.getModifierKeys().size());
+
+            List<Key> expectedKeys = expected.getKeys();
+            List<Key> actualKeys = actual.getKeys();
+            assertEquals(name, expectedKeys.size(), actualKeys.size());
+
+            for (int i = 0; i < expectedKeys.size(); i++) {
+                assertKeyEquals(name + " key " + i, expectedKeys.get(i), actualKeys.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testLoadTime() {
+        long xmlTime = 0;
+        long compiledTime = 0;
+
+        for (String name : mLayoutNames) {
+            int resId = getResId(name);
+
+            long start = System.nanoTime();
+            new Keyboard(mContext, resId);
+            xmlTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            CompiledLayouts.load(mContext, resId);
+            compiledTime += System.nanoTime() - start;
+        }
+
+        Log.d(TAG, "All layouts loaded. Xml: " + xmlTime / 1_000_000 + "ms, compiled: " + compiledTime / 1_000_000 + "ms");
+    }
+
+    private int getResId(String name) {
+        int resId = mContext.getResources().getIdentifier(name, "xml", mContext.getPackageName());
+        assertNotEquals(name, 0, resId);
+        return resId;
+    }
+
+    private static void assertKeyEquals(String message, Key expected, Key actual) {
+        assertEquals(message, expected.x, actual.x);
+        assertEquals(message, expected.y, actual.y);
+        assertEquals(message, expected.width, actual.width);
+        assertEquals(message, expected.height, actual.height);
+        assertEquals(message, expected.gap, actual.gap);
+        assertEquals(message, expected.edgeFlags, actual.edgeFlags);
+        assertArrayEquals(message, expected.codes, actual.codes);
+        assertTrue(message, TextUtils.equals(expected.label, actual.label));
+        assertTrue(message, TextUtils.equals(expected.text, actual.text));
+        assertTrue(message, TextUtils.equals(expected.popupCharacters, actual.popupCharacters));
+        assertEquals(message, expected.popupResId, actual.popupResId);
+        assertEquals(message, expected.icon != null, actual.icon != null);
+        assertEquals(message, expected.repeatable, actual.repeatable);
+        assertEquals(message, expected.modifier, actual.modifier);
+        assertEquals(message, expected.sticky, actual.sticky);
+    }
+}
@@ -6,5 +6,13 @@ import java.util.List;
 
 public interface KeyboardFactory {
     List<? extends KeyboardBuilder> getAllAvailableKeyboards(Context context);
-    boolean needUpdate();
+
+    /**
+     * @param listener called when list of available keyboards has changed (null to remove)
+     */
+    void setOnUpdateListener(OnUpdateListener listener);
+
+    interface OnUpdateListener {
+        void onUpdate();
+    }
 }
@@ -1,19 +1,58 @@
 package com.liskovsoft.leankeyboard.addons.keyboards;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.inputmethodservice.Keyboard;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.ResKeyboardFactory;
+import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.KeyboardInfoRegistry;
+import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class KeyboardManager {
+    private static final String TAG = KeyboardManager.class.getSimpleName();
+    /**
+     * Current, previous and next keyboards plus one recently used
+     */
+    private static final int MAX_CACHED_KEYBOARDS = 4;
+    private static final ExecutorService sPrefetchExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
     private final Context mContext;
     private final KeyboardStateManager mStateManager;
     private List<? extends KeyboardBuilder> mKeyboardBuilders;
-    private List<KeyboardData> mAllKeyboards;
+    /**
+     * Keyboards built so far by index (access ordered, so the first one is least recently used)
+     */
+    private final LinkedHashMap<Integer, KeyboardData> mKeyboardCache = new LinkedHashMap<>(MAX_CACHED_KEYBOARDS, 0.75F, true);
     private final KeyboardFactory mKeyboardFactory;
     private int mKeyboardIndex = 0;
+    /**
+     * Everything that affects built keyboards, see {@link #getFingerprint()}
+     */
+    private String mFingerprint;
+    /**
+     * Incremented on each reload
+     */
+    private int mVersion;
+    /**
+     * Available keyboards have changed (e.g. language enabled in settings)
+     */
+    private boolean mNeedUpdate;
+    /**
+     * How many times each keyboard was selected since keyboards were loaded<br/>
+     * NOTE: Keyed by index, so it's cleared on reload (indexes of the new keyboards are different)
+     */
+    private final Map<Integer, Integer> mUseCounts = new HashMap<>();
 
     public static class KeyboardData {
         public Keyboard abcKeyboard;
@@ -21,31 +60,225 @@ public class KeyboardManager {
         public Keyboard numKeyboard;
     }
 
+    public interface OnPrefetchListener {
+        /**
+         * Called on the main thread
+         * @param data keyboard that most likely will be shown by the next {@link #next()} call
+         */
+        void onPrefetch(KeyboardData data);
+    }
+
     public KeyboardManager(Context ctx) {
         mContext = ctx;
         mStateManager = new KeyboardStateManager(mContext, this);
         mKeyboardFactory = new ResKeyboardFactory(mContext);
+        mKeyboardFactory.setOnUpdateListener(this::onUpdate);
         mStateManager.restore();
     }
 
-    public void load() {
+    /**
+     * NOTE: Keyboards itself are built lazily on first use
+     */
+    public synchronized void load() {
+        mFingerprint = getFingerprint();
         mKeyboardBuilders = mKeyboardFactory.getAllAvailableKeyboards(mContext);
-        mAllKeyboards = buildAllKeyboards();
+        mKeyboardCache.clear();
+        mUseCounts.clear();
+        mVersion++;
+        mNeedUpdate = false;
+    }
+
+    private synchronized void onUpdate() {
+        mNeedUpdate = true;
+    }
+
+    /**
+     * Reload keyboards only if available keyboards, enabled languages or keyboard related prefs have changed
+     * @return true if keyboards were reloaded
+     */
+    public synchronized boolean reloadIfChanged() {
+        if (!mNeedUpdate && mKeyboardBuilders != null && getFingerprint().equals(mFingerprint)) {
+            return false;
+        }
+
+        load();
+        Log.d(TAG, "Keyboards reloaded. Version: " + mVersion);
+
+        return true;
+    }
+
+    /**
+     * NOTE: Locale matters when no language is enabled (layout is autodetected)
+     */
+    private String getFingerprint() {
+        LeanKeyPreferences prefs = LeanKeyPreferences.instance(mContext);
+        StringBuilder result = new StringBuilder();
+
+        for (KeyboardInfo info : KeyboardInfoRegistry.instance(mContext).getAll()) {
+            if (info.isEnabled()) {
+                result.append(info.getLangCode())
+                      .append(info.isAzerty() ? ":azerty" : "")
+                      .append(',');
+            }
+        }
+
+        result.append(prefs.getCurrentTheme())
+              .append(',')
+              .append(prefs.getEnlargeKeyboard())
+              .append(',')
+              .append(prefs.getAutodetectLayout())
+              .append(',')
+              .append(Locale.getDefault());
+
+        return result.toString();
+    }
+
+    private KeyboardData buildKeyboard(KeyboardBuilder builder) {
+        KeyboardData data = new KeyboardData();
+        data.abcKeyboard = builder.createAbcKeyboard();
+        data.symKeyboard = builder.createSymKeyboard();
+        data.numKeyboard = builder.createNumKeyboard();
+        return data;
+    }
+
+    /**
+     * Get keyboard by index, build it if needed
+     */
+    private synchronized KeyboardData getKeyboard(int index) {
+        KeyboardData data = mKeyboardCache.get(index);
+
+        if (data == null) {
+            data = buildKeyboard(mKeyboardBuilders.get(index));
+            mKeyboardCache.put(index, data);
+            trimCache(MAX_CACHED_KEYBOARDS);
+        }
+
+        return data;
+    }
+
+    /**
+     * Drop least recently used keyboards. Current, previous and next keyboards are kept.
+     */
+    private void trimCache(int maxSize) {
+        Iterator<Integer> iterator = mKeyboardCache.keySet().iterator();
+
+        while (mKeyboardCache.size() > maxSize && iterator.hasNext()) {
+            if (!isPinned(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private boolean isPinned(int index) {
+        int size = mKeyboardBuilders.size();
+
+        return index == mKeyboardIndex ||
+               index == (mKeyboardIndex + 1) % size ||
+               index == (mKeyboardIndex - 1 + size) % size;
+    }
+
+    /**
+     * Release keyboards that aren't in use when system is low on memory
+     * @param level {@link ComponentCallbacks2} trim level
+     */
+    public synchronized void onTrimMemory(int level) {
+        if (mKeyboardBuilders == null || level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+
+        int oldSize = mKeyboardCache.size();
+        trimCache(0);
+        Log.d(TAG, "Trim memory: " + level + ", keyboards released: " + (oldSize - mKeyboardCache.size()));
+    }
+
+    /**
+     * Build next keyboard in the cycle and the most used one in the background.<br/>
+     * So switching language doesn't need to parse xml.
+     */
+    public void prefetch(final OnPrefetchListener listener) {
+        final List<? extends KeyboardBuilder> builders;
+        final int nextIndex;
+        final int mostUsedIndex;
+
+        synchronized (this) {
+            if (mKeyboardBuilders == null || mKeyboardBuilders.size() < 2) {
+                return;
+            }
+
+            builders = mKeyboardBuilders;
+            nextIndex = (mKeyboardIndex + 1) % builders.size();
+            mostUsedIndex = getMostUsedIndex();
+        }
+
+        sPrefetchExecutor.execute(() -> {
+            KeyboardData next = prefetchKeyboard(builders, nextIndex);
+
+            if (next == null) {
+                return; // reloaded
+            }
+
+            if (mostUsedIndex != -1 && mostUsedIndex != nextIndex) {
+                prefetchKeyboard(builders, mostUsedIndex);
+            }
+
+            mHandler.post(() -> listener.onPrefetch(next));
+        });
+    }
+
+    /**
+     * Keyboard is built without holding the lock (so main thread isn't blocked), only result is published under the lock
+     * @return null if keyboards were reloaded meanwhile
+     */
+    private KeyboardData prefetchKeyboard(List<? extends KeyboardBuilder> builders, int index) {
+        synchronized (this) {
+            if (builders != mKeyboardBuilders) {
+                return null;
+            }
+
+            KeyboardData data = mKeyboardCache.get(index);
+
+            if (data != null) {
+                return data;
+            }
+        }
+
+        KeyboardData data = buildKeyboard(builders.get(index));
+
+        synchronized (this) {
+            if (builders != mKeyboardBuilders) {
+                return null;
+            }
+
+            KeyboardData cached = mKeyboardCache.get(index);
+
+            if (cached != null) {
+                return cached; // built on the main thread meanwhile
+            }
+
+            mKeyboardCache.put(index, data);
+            trimCache(MAX_CACHED_KEYBOARDS);
+
+            return data;
+        }
     }
 
-    private List<KeyboardData> buildAllKeyboards() {
-        List<KeyboardData> keyboards = new ArrayList<>();
-        if (!mKeyboardBuilders.isEmpty()) {
-            for (KeyboardBuilder builder : mKeyboardBuilders) {
-                KeyboardData data = new KeyboardData();
-                data.abcKeyboard = builder.createAbcKeyboard();
-                data.symKeyboard = builder.createSymKeyboard();
-                data.numKeyboard = builder.createNumKeyboard();
+    /**
+     * @return most used keyboard that isn't pinned or -1
+     */
+    private int getMostUsedIndex() {
+        int result = -1;
+        int maxCount = 0;
+
+        for (Integer index : mUseCounts.keySet()) {
+            int count = mUseCounts.get(index);
 
-                keyboards.add(data);
+            if (count > maxCount && !isPinned(index)) {
+                result = index;
+                maxCount = count;
             }
         }
-        return keyboards;
+
+        return result;
     }
 
     /**
@@ -58,46 +291,49 @@ public class KeyboardManager {
     /**
      * Get next keyboard from internal source (looped)
      */
-    public KeyboardData next() {
-        if (mKeyboardFactory.needUpdate() || mAllKeyboards == null) {
+    public synchronized KeyboardData next() {
+        if (mNeedUpdate || mKeyboardBuilders == null) {
             load();
         }
 
         ++mKeyboardIndex;
 
-        mKeyboardIndex = mKeyboardIndex < mAllKeyboards.size() ? mKeyboardIndex : 0;
+        mKeyboardIndex = mKeyboardIndex < mKeyboardBuilders.size() ? mKeyboardIndex : 0;
 
-        KeyboardData kbd = mAllKeyboards.get(mKeyboardIndex);
+        KeyboardData kbd = getKeyboard(mKeyboardIndex);
 
         if (kbd == null) {
             throw new IllegalStateException(String.format("Keyboard %s not initialized", mKeyboardIndex));
         }
 
+        Integer count = mUseCounts.get(mKeyboardIndex);
+        mUseCounts.put(mKeyboardIndex, count == null ? 1 : count + 1);
+
         onNextKeyboard();
 
         return kbd;
     }
 
-    public int getIndex() {
+    public synchronized int getIndex() {
         return mKeyboardIndex;
     }
 
-    public void setIndex(int idx) {
+    public synchronized void setIndex(int idx) {
         mKeyboardIndex = idx;
     }
 
     /**
      * Get current keyboard
      */
-    public KeyboardData get() {
-        if (mAllKeyboards == null) {
+    public synchronized KeyboardData get() {
+        if (mNeedUpdate || mKeyboardBuilders == null) {
             load();
         }
 
-        if (mAllKeyboards.size() <= mKeyboardIndex) {
+        if (mKeyboardBuilders.size() <= mKeyboardIndex) {
             mKeyboardIndex = 0;
         }
 
-        return mAllKeyboards.get(mKeyboardIndex);
+        return getKeyboard(mKeyboardIndex);
     }
 }
@@ -0,0 +1,78 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.addons;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Persisted list of receivers that publish add-on metadata, keyed by package name.<br/>
+ * Entry stays valid while package's versionCode and lastUpdateTime are the same,
+ * so metadata is loaded only for new or updated packages.<br/>
+ * NOTE: receivers are stored regardless of their enabled state (it could be changed without package update)
+ */
+class AddOnPackageIndex {
+    private static final String PREFS_NAME_PREFIX = "addons_index_";
+    private static final String STAMP_SEPARATOR = "|";
+    private static final String RECEIVER_SEPARATOR = ",";
+    private final SharedPreferences mPrefs;
+
+    AddOnPackageIndex(Context context, String name) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME_PREFIX + name, Context.MODE_PRIVATE);
+    }
+
+    static String getStamp(PackageInfo info) {
+        return info.versionCode + ":" + info.lastUpdateTime;
+    }
+
+    /**
+     * @return receivers with add-on metadata or null if package isn't indexed or has been updated since
+     */
+    Set<String> getReceivers(PackageInfo info) {
+        String value = mPrefs.getString(info.packageName, null);
+
+        if (value == null) {
+            return null;
+        }
+
+        int separator = value.indexOf(STAMP_SEPARATOR);
+
+        if (separator == -1 || !getStamp(info).equals(value.substring(0, separator))) {
+            return null;
+        }
+
+        String receivers = value.substring(separator + 1);
+
+        if (receivers.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        return new HashSet<>(Arrays.asList(receivers.split(RECEIVER_SEPARATOR)));
+    }
+
+    /**
+     * Package has (or had before removal) at least one receiver with add-on metadata
+     */
+    boolean containsAddOn(String packageName) {
+        String value = mPrefs.getString(packageName, null);
+
+        return value != null && !value.endsWith(STAMP_SEPARATOR);
+    }
+
+    void put(PackageInfo info, Set<String> receivers) {
+        mPrefs.edit()
+                .putString(info.packageName, getStamp(info) + STAMP_SEPARATOR + TextUtils.join(RECEIVER_SEPARATOR, receivers))
+                .apply();
+    }
+
+    void remove(String packageName) {
+        mPrefs.edit()
+                .remove(packageName)
+                .apply();
+    }
+}
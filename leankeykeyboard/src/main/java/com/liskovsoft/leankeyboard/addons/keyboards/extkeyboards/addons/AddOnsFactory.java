@@ -33,11 +33,17 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class AddOnsFactory<E extends AddOn> {
 
@@ -63,20 +69,60 @@ public abstract class AddOnsFactory<E extends AddOn> {
         }
     }
 
-    private final static ArrayList<AddOnsFactory<?>> mActiveInstances = new ArrayList<>();
+    /**
+     * Weak keys, so unused factories could be collected
+     */
+    private final static Set<AddOnsFactory<?>> sActiveInstances = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Add-ons of all factories by id. Filled when factory loads its add-ons.<br/>
+     * NOTE: Add-ons are held by their factory, so entries of collected factories are cleared automatically
+     */
+    private final static ConcurrentHashMap<String, WeakReference<AddOn>> sAddOnsIndex = new ConcurrentHashMap<>();
 
     private static final String sTAG = "AddOnsFactory";
 
     public static AddOn locateAddOn(String id, Context askContext) {
-        for (AddOnsFactory<?> factory : mActiveInstances) {
-            AddOn addOn = factory.getAddOnById(id, askContext);
-            if (addOn != null) {
-                Logger.d(sTAG, "Located addon with id " + addOn.getId() + " of type " + addOn.getClass().getName());
-                return addOn;
+        AddOn addOn = getIndexedAddOn(id);
+
+        if (addOn == null) {
+            // some factories might not be loaded yet
+            for (AddOnsFactory<?> factory : getActiveInstances()) {
+                if (!factory.isLoaded()) {
+                    factory.getAllAddOns(askContext);
+                }
             }
+
+            addOn = getIndexedAddOn(id);
+        }
+
+        if (addOn != null) {
+            Logger.d(sTAG, "Located addon with id " + addOn.getId() + " of type " + addOn.getClass().getName());
+        }
+
+        return addOn;
+    }
+
+    private static AddOn getIndexedAddOn(String id) {
+        WeakReference<AddOn> ref = sAddOnsIndex.get(id);
+
+        if (ref == null) {
+            return null;
+        }
+
+        AddOn addOn = ref.get();
+
+        if (addOn == null) {
+            sAddOnsIndex.remove(id, ref);
         }
 
-        return null;
+        return addOn;
+    }
+
+    private static List<AddOnsFactory<?>> getActiveInstances() {
+        synchronized (sActiveInstances) {
+            return new ArrayList<>(sActiveInstances);
+        }
     }
 
     protected final String TAG;
@@ -97,6 +143,13 @@ public abstract class AddOnsFactory<E extends AddOn> {
     private final ArrayList<E> mAddOns = new ArrayList<>();
     private final HashMap<String, E> mAddOnsById = new HashMap<>();
 
+    /**
+     * Add-ons parsed during this session, keyed by receiver (package/name).<br/>
+     * Reused on reload. Entries of the package are dropped when the package is updated or removed.
+     */
+    private final HashMap<String, ArrayList<E>> mParsedAddOns = new HashMap<>();
+    private AddOnPackageIndex mPackageIndex;
+
     private final boolean mReadExternalPacksToo;
     private final String ROOT_NODE_TAG;
     private final String ADDON_NODE_TAG;
@@ -116,7 +169,9 @@ public abstract class AddOnsFactory<E extends AddOn> {
         //mBuildInAddOnsResId = buildInAddonResId;
         mReadExternalPacksToo = readExternalPacksToo;
 
-        mActiveInstances.add(this);
+        synchronized (sActiveInstances) {
+            sActiveInstances.add(this);
+        }
     }
 
     protected boolean isEventRequiresCacheRefresh(Intent eventIntent, Context context) {
@@ -131,21 +186,22 @@ public abstract class AddOnsFactory<E extends AddOn> {
             }
         } else if (Intent.ACTION_PACKAGE_REPLACED.equals(action) || Intent.ACTION_PACKAGE_CHANGED.equals(action)) {
             //If I'm managing OR it contains an addon (could be new feature in the package), I want to reset.
+            //NOTE: checked even for managed package, so the package index stays up to date
+            boolean hasAddon = isPackageContainAnAddon(context, packageNameSchemePart);
             boolean isPackagedManaged = isPackageManaged(packageNameSchemePart);
             if (isPackagedManaged) {
                 Logger.d(TAG, "It seems that an addon I use (in package " + packageNameSchemePart + ") has been changed. I need to reload stuff.");
                 return true;
-            } else {
-                boolean hasAddon = isPackageContainAnAddon(context, packageNameSchemePart);
-                if (hasAddon) {
-                    Logger.d(TAG, "It seems that an addon exists in an updated package " + packageNameSchemePart + ". I need to reload stuff.");
-                    return true;
-                }
+            } else if (hasAddon) {
+                Logger.d(TAG, "It seems that an addon exists in an updated package " + packageNameSchemePart + ". I need to reload stuff.");
+                return true;
             }
         } else //removed
         {
             //so only if I manage this package, I want to reset
             boolean isPackagedManaged = isPackageManaged(packageNameSchemePart);
+            getPackageIndex(context).remove(packageNameSchemePart);
+            forgetParsedAddOns(packageNameSchemePart);
             if (isPackagedManaged) {
                 Logger.d(TAG, "It seems that an addon I use (in package " + packageNameSchemePart + ") has been removed. I need to reload stuff.");
                 return true;
@@ -174,13 +230,12 @@ public abstract class AddOnsFactory<E extends AddOn> {
             return false;
         }
         if (newPackage.receivers != null) {
-            ActivityInfo[] receivers = newPackage.receivers;
-            for (ActivityInfo aReceiver : receivers) {
+            Set<String> addOnReceivers = getAddOnReceivers(context, newPackage);
+            for (ActivityInfo aReceiver : newPackage.receivers) {
                 //issue 904
                 if (aReceiver == null || aReceiver.applicationInfo == null || !aReceiver.enabled || !aReceiver.applicationInfo.enabled)
                     continue;
-                final XmlPullParser xml = aReceiver.loadXmlMetaData(context.getPackageManager(), RECEIVER_META_DATA);
-                if (xml != null) {
+                if (addOnReceivers.contains(aReceiver.name)) {
                     return true;
                 }
             }
@@ -189,15 +244,91 @@ public abstract class AddOnsFactory<E extends AddOn> {
         return false;
     }
 
+    /**
+     * Receivers (enabled or not) that publish add-on metadata.<br/>
+     * Metadata is loaded only if the package is new or updated since it was indexed
+     * (e.g. not when only its components are enabled or disabled).
+     * @param packageInfo obtained with {@link PackageManager#GET_RECEIVERS} and {@link PackageManager#GET_META_DATA} flags
+     */
+    private Set<String> getAddOnReceivers(Context context, PackageInfo packageInfo) {
+        AddOnPackageIndex packageIndex = getPackageIndex(context);
+        Set<String> result = packageIndex.getReceivers(packageInfo);
+
+        if (result != null) {
+            return result;
+        }
+
+        // package is new or updated, so its add-ons should be parsed again
+        forgetParsedAddOns(packageInfo.packageName);
+        result = new HashSet<>();
+
+        if (packageInfo.receivers != null) {
+            for (ActivityInfo aReceiver : packageInfo.receivers) {
+                if (aReceiver == null)
+                    continue;
+                final XmlPullParser xml = aReceiver.loadXmlMetaData(context.getPackageManager(), RECEIVER_META_DATA);
+                if (xml != null) {
+                    result.add(aReceiver.name);
+                }
+            }
+        }
+
+        Logger.d(TAG, "Package %s indexed. Add-on receivers: %s", packageInfo.packageName, result);
+        packageIndex.put(packageInfo, result);
+
+        return result;
+    }
+
+    private synchronized AddOnPackageIndex getPackageIndex(Context context) {
+        if (mPackageIndex == null) {
+            mPackageIndex = new AddOnPackageIndex(context.getApplicationContext(), RECEIVER_META_DATA);
+        }
+
+        return mPackageIndex;
+    }
+
+    private synchronized void forgetParsedAddOns(String packageName) {
+        String prefix = packageName + "/";
+        Iterator<String> keys = mParsedAddOns.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Call on package added/replaced/changed/removed broadcast
+     * @return true if add-ons were reset and will be reloaded on next access
+     */
+    public boolean onPackageEvent(Intent eventIntent, Context context) {
+        if (!isEventRequiresCacheRefresh(eventIntent, context)) {
+            return false;
+        }
+
+        clearAddOnList();
+        return true;
+    }
+
     protected boolean isEventRequiresViewReset(Intent eventIntent, Context context) {
         return false;
     }
 
     protected synchronized void clearAddOnList() {
+        for (E addOn : mAddOns) {
+            WeakReference<AddOn> ref = sAddOnsIndex.get(addOn.getId());
+            if (ref != null && ref.get() == addOn) {
+                sAddOnsIndex.remove(addOn.getId(), ref);
+            }
+        }
         mAddOns.clear();
         mAddOnsById.clear();
     }
 
+    private synchronized boolean isLoaded() {
+        return mAddOns.size() > 0;
+    }
+
     public synchronized E getAddOnById(String id, Context askContext) {
         if (mAddOnsById.size() == 0) {
             loadAddOns(askContext);
@@ -230,6 +361,9 @@ public abstract class AddOnsFactory<E extends AddOn> {
         Logger.d(TAG, "Have %d add on for %s", mAddOns.size(), getClass().getName());
 
         buildOtherDataBasedOnNewAddOns(mAddOns);
+        for (E addOn : mAddOns) {
+            sAddOnsIndex.put(addOn.getId(), new WeakReference<>(addOn));
+        }
 
         //sorting the keyboards according to the requested
         //sort order (from minimum to maximum)
@@ -251,7 +385,6 @@ public abstract class AddOnsFactory<E extends AddOn> {
         final List<ResolveInfo> broadcastReceivers =
                 askContext.getPackageManager().queryBroadcastReceivers(new Intent(RECEIVER_INTERFACE), PackageManager.GET_META_DATA);
 
-
         for (final ResolveInfo receiver : broadcastReceivers) {
             if (receiver.activityInfo == null) {
                 Logger.e(TAG, "BroadcastReceiver has null ActivityInfo. Receiver's label is "
@@ -263,13 +396,23 @@ public abstract class AddOnsFactory<E extends AddOn> {
 
             if (!receiver.activityInfo.enabled || !receiver.activityInfo.applicationInfo.enabled) continue;
 
+            final String packageName = receiver.activityInfo.packageName;
+
             try {
-                final Context externalPackageContext = askContext.createPackageContext(receiver.activityInfo.packageName, Context.CONTEXT_IGNORE_SECURITY);
-                final ArrayList<E> packageAddOns = getAddOnsFromActivityInfo(askContext, externalPackageContext, receiver.activityInfo);
+                final String receiverKey = packageName + "/" + receiver.activityInfo.name;
+                ArrayList<E> packageAddOns = mParsedAddOns.get(receiverKey);
+
+                if (packageAddOns == null) {
+                    final Context externalPackageContext = askContext.createPackageContext(packageName, Context.CONTEXT_IGNORE_SECURITY);
+                    packageAddOns = getAddOnsFromActivityInfo(askContext, externalPackageContext, receiver.activityInfo);
+                    mParsedAddOns.put(receiverKey, packageAddOns);
+                } else {
+                    Logger.d(TAG, "Add-ons of %s are already parsed", receiverKey);
+                }
 
                 externalAddOns.addAll(packageAddOns);
             } catch (final NameNotFoundException e) {
-                Logger.e(TAG, "Did not find package: " + receiver.activityInfo.packageName);
+                Logger.e(TAG, "Did not find package: " + packageName);
             }
 
         }
@@ -6,6 +6,7 @@ import android.util.SparseIntArray;
 
 import androidx.annotation.NonNull;
 import com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.utils.log.Logger;
+import com.liskovsoft.leankeyboard.utils.ResourceIds;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -46,7 +47,7 @@ class Support {
                 remoteAttrId = attrId;
             } else {
                 final String attributeName = localRes.getResourceEntryName(attrId);
-                remoteAttrId = remoteRes.getIdentifier(attributeName, "attr", remotePackageName);
+                remoteAttrId = ResourceIds.get(remoteRes, remotePackageName, "attr", attributeName);
                 Logger.d(TAG, "attr "+attributeName+", local id "+attrId+", remote id "+remoteAttrId);
             }
             if (remoteAttrId != 0) {
@@ -17,7 +17,9 @@
 package com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.keyboards;
 
 import android.content.Context;
+import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.inputmethodservice.*;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
@@ -30,6 +32,7 @@ import com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.addons.AddOnsFa
 import com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.utils.log.Logger;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -45,6 +48,13 @@ public class ApkLangKeyboardFactory extends AddOnsFactory<ApkKeyboardAddOnAndBui
     private static final String DEFAULT_SENTENCE_SEPARATORS = ".,!?)]:;";
     private static final String XML_PHYSICAL_TRANSLATION_RES_ID_ATTRIBUTE = "physicalKeyboardMappingResId";
     private static final String XML_DEFAULT_ATTRIBUTE = "defaultEnabled";
+    private List<ApkKeyboardAddOnAndBuilder> mEnabledKeyboards;
+    private SharedPreferences mPrefs;
+    private OnUpdateListener mUpdateListener;
+    /**
+     * NOTE: Prefs keep only weak reference to the listener
+     */
+    private final OnSharedPreferenceChangeListener mPrefsListener = this::onPrefChanged;
 
     public ApkLangKeyboardFactory() {
         super(TAG, "com.liskovsoft.leankey.langpack.KEYBOARD", "com.liskovsoft.leankey.langpack.keyboards",
@@ -58,17 +68,38 @@ public class ApkLangKeyboardFactory extends AddOnsFactory<ApkKeyboardAddOnAndBui
     }
 
     @Override
-    public boolean needUpdate() {
-        // TODO: implement need update
-        return false;
+    public void setOnUpdateListener(OnUpdateListener listener) {
+        mUpdateListener = listener;
     }
 
-    public List<ApkKeyboardAddOnAndBuilder> getEnabledKeyboards(Context askContext) {
+    @Override
+    public boolean onPackageEvent(Intent eventIntent, Context context) {
+        boolean reset = super.onPackageEvent(eventIntent, context);
+
+        if (reset) {
+            invalidate();
+        }
+
+        return reset;
+    }
+
+    /**
+     * Result is cached until add-on is enabled/disabled in prefs or add-on package is changed
+     */
+    public synchronized List<ApkKeyboardAddOnAndBuilder> getEnabledKeyboards(Context askContext) {
+        if (mEnabledKeyboards == null) {
+            mEnabledKeyboards = Collections.unmodifiableList(createEnabledKeyboards(askContext));
+        }
+
+        return mEnabledKeyboards;
+    }
+
+    private List<ApkKeyboardAddOnAndBuilder> createEnabledKeyboards(Context askContext) {
         final List<ApkKeyboardAddOnAndBuilder> allAddOns = getAllAddOns(askContext);
         Logger.i(TAG, "Creating enabled addons list. I have a total of " + allAddOns.size() + " addons");
 
         //getting shared prefs to determine which to create.
-        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(askContext);
+        final SharedPreferences sharedPreferences = getPrefs(askContext);
 
         final ArrayList<ApkKeyboardAddOnAndBuilder> enabledAddOns = new ArrayList<>();
         for (int addOnIndex = 0; addOnIndex < allAddOns.size(); addOnIndex++) {
@@ -83,11 +114,11 @@ public class ApkLangKeyboardFactory extends AddOnsFactory<ApkKeyboardAddOnAndBui
 
         // Fix: issue 219
         // Check if there is any keyboards created if not, lets create a default english keyboard
-        if (enabledAddOns.size() == 0) {
+        if (enabledAddOns.size() == 0 && allAddOns.size() > 0) {
             final SharedPreferences.Editor editor = sharedPreferences.edit();
             final ApkKeyboardAddOnAndBuilder addOn = allAddOns.get(0);
             editor.putBoolean(addOn.getId(), true);
-            editor.commit();
+            editor.apply();
             enabledAddOns.add(addOn);
         }
 
@@ -98,6 +129,46 @@ public class ApkLangKeyboardFactory extends AddOnsFactory<ApkKeyboardAddOnAndBui
         return enabledAddOns;
     }
 
+    private SharedPreferences getPrefs(Context askContext) {
+        if (mPrefs == null) {
+            mPrefs = PreferenceManager.getDefaultSharedPreferences(askContext);
+            mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
+        }
+
+        return mPrefs;
+    }
+
+    private void onPrefChanged(SharedPreferences prefs, String key) {
+        if (key == null || !key.startsWith(ApkKeyboardAddOnAndBuilder.KEYBOARD_PREF_PREFIX)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (mEnabledKeyboards == null) {
+                return;
+            }
+
+            // skip own writes (see issue 219 fix)
+            for (ApkKeyboardAddOnAndBuilder addOn : mEnabledKeyboards) {
+                if (addOn.getId().equals(key) && prefs.getBoolean(key, false)) {
+                    return;
+                }
+            }
+        }
+
+        invalidate();
+    }
+
+    private void invalidate() {
+        synchronized (this) {
+            mEnabledKeyboards = null;
+        }
+
+        if (mUpdateListener != null) {
+            mUpdateListener.onUpdate();
+        }
+    }
+
     @Override
     protected ApkKeyboardAddOnAndBuilder createConcreteAddOn(Context askContext, Context context, String prefId, int nameId, String description, int sortIndex, AttributeSet attrs) {
         final int layoutResId = attrs.getAttributeResourceValue(null, XML_LAYOUT_RES_ID_ATTRIBUTE, AddOn.INVALID_RES_ID);
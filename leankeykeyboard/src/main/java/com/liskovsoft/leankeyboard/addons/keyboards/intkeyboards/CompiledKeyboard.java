@@ -0,0 +1,216 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+import com.liskovsoft.leankeykeyboard.R;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keyboard that is filled by {@link CompiledLayouts} instead of the xml parser.<br/>
+ * State that {@link Keyboard} keeps private (keys, size, shift keys, proximity grid) is stored here.<br/>
+ * NOTE: {@link Keyboard} constructors always parse xml, so it's done only once (for the prototype).
+ * Other instances are copies of the prototype.
+ */
+class CompiledKeyboard extends Keyboard implements Cloneable {
+    private static final int GRID_WIDTH = 10;
+    private static final int GRID_HEIGHT = 5;
+    private static final int GRID_SIZE = GRID_WIDTH * GRID_HEIGHT;
+    /**
+     * Same as in {@link Keyboard}: neighbors are searched within 1.8 key widths
+     */
+    private static final float SEARCH_DISTANCE = 1.8F;
+    private static CompiledKeyboard sPrototype;
+    private List<Key> mKeys;
+    private List<Key> mModifierKeys;
+    private Key[] mShiftKeys;
+    private int[] mShiftKeyIndices;
+    private boolean mShifted;
+    private int mTotalWidth;
+    private int mTotalHeight;
+    private int mCellWidth;
+    private int mCellHeight;
+    private int[][] mGridNeighbors;
+
+    private CompiledKeyboard(Context context) {
+        super(context, R.xml.empty_kbd);
+        reset();
+    }
+
+    /**
+     * Empty keyboard
+     */
+    static synchronized CompiledKeyboard create(Context context) {
+        if (sPrototype == null) {
+            sPrototype = new CompiledKeyboard(context.getApplicationContext());
+        }
+
+        return sPrototype.cloneEmpty();
+    }
+
+    void setDefaults(int keyWidth, int keyHeight, int horizontalGap, int verticalGap) {
+        setKeyWidth(keyWidth);
+        setKeyHeight(keyHeight);
+        setHorizontalGap(horizontalGap);
+        setVerticalGap(verticalGap);
+    }
+
+    void setSize(int totalWidth, int totalHeight) {
+        mTotalWidth = totalWidth;
+        mTotalHeight = totalHeight;
+    }
+
+    /**
+     * Same bookkeeping as xml parser does
+     */
+    void addKey(Key key) {
+        mKeys.add(key);
+        mGridNeighbors = null;
+
+        if (key.codes == null) {
+            return;
+        }
+
+        if (key.codes[0] == KEYCODE_SHIFT) {
+            for (int i = 0; i < mShiftKeys.length; i++) {
+                if (mShiftKeys[i] == null) {
+                    mShiftKeys[i] = key;
+                    mShiftKeyIndices[i] = mKeys.size() - 1;
+                    break;
+                }
+            }
+
+            mModifierKeys.add(key);
+        } else if (key.codes[0] == KEYCODE_ALT) {
+            mModifierKeys.add(key);
+        }
+    }
+
+    @Override
+    public List<Key> getKeys() {
+        return mKeys;
+    }
+
+    @Override
+    public List<Key> getModifierKeys() {
+        return mModifierKeys;
+    }
+
+    @Override
+    public int getHeight() {
+        return mTotalHeight;
+    }
+
+    @Override
+    public int getMinWidth() {
+        return mTotalWidth;
+    }
+
+    @Override
+    public boolean setShifted(boolean shiftState) {
+        for (Key shiftKey : mShiftKeys) {
+            if (shiftKey != null) {
+                shiftKey.on = shiftState;
+            }
+        }
+
+        if (mShifted != shiftState) {
+            mShifted = shiftState;
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean isShifted() {
+        return mShifted;
+    }
+
+    @Override
+    public int getShiftKeyIndex() {
+        return mShiftKeyIndices[0];
+    }
+
+    /**
+     * Same as in {@link Keyboard} (that one reads private key list)
+     */
+    @Override
+    public int[] getNearestKeys(int x, int y) {
+        if (mGridNeighbors == null) {
+            computeNearestNeighbors();
+        }
+
+        if (mCellWidth > 0 && mCellHeight > 0 && x >= 0 && x < getMinWidth() && y >= 0 && y < getHeight()) {
+            int index = (y / mCellHeight) * GRID_WIDTH + (x / mCellWidth);
+
+            if (index < GRID_SIZE) {
+                return mGridNeighbors[index];
+            }
+        }
+
+        return new int[0];
+    }
+
+    private void computeNearestNeighbors() {
+        mCellWidth = (getMinWidth() + GRID_WIDTH - 1) / GRID_WIDTH;
+        mCellHeight = (getHeight() + GRID_HEIGHT - 1) / GRID_HEIGHT;
+        mGridNeighbors = new int[GRID_SIZE][];
+
+        if (mCellWidth == 0 || mCellHeight == 0) {
+            return;
+        }
+
+        int threshold = (int) (getKeyWidth() * SEARCH_DISTANCE);
+        threshold *= threshold;
+        int[] indices = new int[mKeys.size()];
+        int gridWidth = GRID_WIDTH * mCellWidth;
+        int gridHeight = GRID_HEIGHT * mCellHeight;
+
+        for (int x = 0; x < gridWidth; x += mCellWidth) {
+            for (int y = 0; y < gridHeight; y += mCellHeight) {
+                int count = 0;
+
+                for (int i = 0; i < mKeys.size(); i++) {
+                    Key key = mKeys.get(i);
+
+                    if (key.squaredDistanceFrom(x, y) < threshold ||
+                            key.squaredDistanceFrom(x + mCellWidth - 1, y) < threshold ||
+                            key.squaredDistanceFrom(x + mCellWidth - 1, y + mCellHeight - 1) < threshold ||
+                            key.squaredDistanceFrom(x, y + mCellHeight - 1) < threshold) {
+                        indices[count++] = i;
+                    }
+                }
+
+                int[] cell = new int[count];
+                System.arraycopy(indices, 0, cell, 0, count);
+                mGridNeighbors[(y / mCellHeight) * GRID_WIDTH + (x / mCellWidth)] = cell;
+            }
+        }
+    }
+
+    /**
+     * NOTE: {@link Object#clone()} doesn't run constructors, so xml isn't parsed
+     */
+    private CompiledKeyboard cloneEmpty() {
+        try {
+            CompiledKeyboard keyboard = (CompiledKeyboard) super.clone();
+            keyboard.reset();
+            return keyboard;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void reset() {
+        mKeys = new ArrayList<>();
+        mModifierKeys = new ArrayList<>();
+        mShiftKeys = new Key[] {null, null};
+        mShiftKeyIndices = new int[] {-1, -1};
+        mShifted = false;
+        mTotalWidth = 0;
+        mTotalHeight = 0;
+        mGridNeighbors = null;
+    }
+}
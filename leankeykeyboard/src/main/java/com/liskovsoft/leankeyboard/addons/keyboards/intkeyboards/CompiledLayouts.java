@@ -0,0 +1,286 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+import android.inputmethodservice.Keyboard.Row;
+import android.text.TextUtils;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.TypedValue;
+import androidx.core.content.ContextCompat;
+import com.liskovsoft.leankeyboard.utils.ResourceIds;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keyboard layouts compiled at build time into the binary asset (see layouts.gradle).<br/>
+ * Asset is memory mapped once, so loading a layout doesn't involve xml parsing.<br/>
+ * Resource references (dimensions, labels, icons, popups) are resolved at load time,
+ * so keys are the same as ones created by {@link Keyboard#Keyboard(Context, int)}.
+ */
+public class CompiledLayouts {
+    private static final String TAG = CompiledLayouts.class.getSimpleName();
+    private static final String ASSET_NAME = "layouts.klb";
+    private static final int MAGIC = 0x4B4C4231; // KLB1
+    private static final int VERSION = 1;
+    private static final int DIM_NONE = 0;
+    private static final int DIM_RESOURCE = 1;
+    private static final int DIM_FRACTION = 2;
+    private static final int DIM_VALUE = 3;
+    private static final int TEXT_NONE = 0;
+    private static final int TEXT_LITERAL = 1;
+    private static final int TEXT_RESOURCE = 2;
+    private static final int KEY_REPEATABLE = 1;
+    private static final int KEY_MODIFIER = 1 << 1;
+    private static final int KEY_STICKY = 1 << 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static CompiledLayouts sInstance;
+    private final ByteBuffer mBuffer;
+    private final Map<String, Integer> mOffsets;
+
+    private CompiledLayouts(ByteBuffer buffer, Map<String, Integer> offsets) {
+        mBuffer = buffer;
+        mOffsets = offsets;
+    }
+
+    /**
+     * Load keyboard from the compiled asset or fall back to the xml parser
+     */
+    public static Keyboard load(Context context, int xmlResId) {
+        CompiledLayouts layouts = instance(context);
+
+        if (layouts != null) {
+            String name = context.getResources().getResourceEntryName(xmlResId);
+            Integer offset = layouts.mOffsets.get(name);
+
+            if (offset != null) {
+                return layouts.build(context, offset);
+            }
+
+            Log.w(TAG, "Layout isn't compiled: " + name);
+        }
+
+        return new Keyboard(context, xmlResId);
+    }
+
+    static Set<String> getLayoutNames(Context context) {
+        CompiledLayouts layouts = instance(context);
+
+        return layouts != null ? layouts.mOffsets.keySet() : Collections.emptySet();
+    }
+
+    /**
+     * @return null if asset is missing or broken
+     */
+    private static synchronized CompiledLayouts instance(Context context) {
+        if (sInstance == null) {
+            sInstance = open(context);
+        }
+
+        return sInstance;
+    }
+
+    private static CompiledLayouts open(Context context) {
+        AssetFileDescriptor fd = null;
+
+        try {
+            fd = context.getAssets().openFd(ASSET_NAME);
+            // mapping stays valid after the file is closed
+            FileInputStream stream = fd.createInputStream();
+            ByteBuffer buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                Log.e(TAG, "Unsupported layouts asset");
+                return null;
+            }
+
+            int count = buffer.getShort();
+            Map<String, Integer> offsets = new HashMap<>(count * 2);
+
+            for (int i = 0; i < count; i++) {
+                String name = readString(buffer);
+                offsets.put(name, buffer.getInt());
+            }
+
+            return new CompiledLayouts(buffer, offsets);
+        } catch (IOException e) {
+            Log.e(TAG, "Can't open layouts asset: " + e.getMessage());
+            return null;
+        } finally {
+            closeQuietly(fd);
+        }
+    }
+
+    private static void closeQuietly(AssetFileDescriptor fd) {
+        if (fd == null) {
+            return;
+        }
+
+        try {
+            fd.close();
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage());
+        }
+    }
+
+    /**
+     * Mirrors the xml parser of the {@link Keyboard}
+     */
+    private Keyboard build(Context context, int offset) {
+        ByteBuffer in = mBuffer.duplicate(); // own position, so could be used from any thread
+        in.position(offset);
+
+        Resources res = context.getResources();
+        DisplayMetrics dm = res.getDisplayMetrics();
+        int displayWidth = dm.widthPixels;
+        int displayHeight = dm.heightPixels;
+
+        CompiledKeyboard keyboard = CompiledKeyboard.create(context);
+        int defaultWidth = readDimension(in, res, displayWidth, displayWidth / 10);
+        int defaultHeight = readDimension(in, res, displayHeight, 50);
+        int defaultHorizontalGap = readDimension(in, res, displayWidth, 0);
+        int defaultVerticalGap = readDimension(in, res, displayHeight, 0);
+        keyboard.setDefaults(defaultWidth, defaultHeight, defaultHorizontalGap, defaultVerticalGap);
+
+        int rowCount = in.getShort();
+        int totalWidth = 0;
+        int y = 0;
+
+        for (int i = 0; i < rowCount; i++) {
+            Row row = new Row(keyboard);
+            row.defaultWidth = readDimension(in, res, displayWidth, defaultWidth);
+            row.defaultHeight = readDimension(in, res, displayHeight, defaultHeight);
+            row.defaultHorizontalGap = readDimension(in, res, displayWidth, defaultHorizontalGap);
+            row.verticalGap = readDimension(in, res, displayHeight, defaultVerticalGap);
+            row.rowEdgeFlags = in.getInt();
+
+            int keyCount = in.getShort();
+            int x = 0;
+
+            for (int j = 0; j < keyCount; j++) {
+                Key key = readKey(in, context, row, displayWidth, displayHeight);
+                key.x = x + key.gap;
+                key.y = y;
+                keyboard.addKey(key);
+
+                x += key.gap + key.width;
+                totalWidth = Math.max(totalWidth, x);
+            }
+
+            y += row.verticalGap + row.defaultHeight;
+        }
+
+        keyboard.setSize(totalWidth, y - defaultVerticalGap);
+
+        return keyboard;
+    }
+
+    private Key readKey(ByteBuffer in, Context context, Row row, int displayWidth, int displayHeight) {
+        Resources res = context.getResources();
+        Key key = new Key(row);
+        key.width = readDimension(in, res, displayWidth, row.defaultWidth);
+        key.height = readDimension(in, res, displayHeight, row.defaultHeight);
+        key.gap = readDimension(in, res, displayWidth, row.defaultHorizontalGap);
+
+        int codesCount = in.get();
+
+        if (codesCount > 0) {
+            key.codes = new int[codesCount];
+
+            for (int i = 0; i < codesCount; i++) {
+                key.codes[i] = in.getInt();
+            }
+        }
+
+        key.label = readText(in, res);
+
+        int iconResId = readResId(in, res);
+
+        if (iconResId != 0) {
+            Drawable icon = ContextCompat.getDrawable(context, iconResId);
+            icon.setBounds(0, 0, icon.getIntrinsicWidth(), icon.getIntrinsicHeight());
+            key.icon = icon;
+        }
+
+        key.popupResId = readResId(in, res);
+        key.popupCharacters = readText(in, res);
+        key.text = readText(in, res);
+        key.edgeFlags = in.getInt() | row.rowEdgeFlags;
+
+        int flags = in.get();
+        key.repeatable = (flags & KEY_REPEATABLE) != 0;
+        key.modifier = (flags & KEY_MODIFIER) != 0;
+        key.sticky = (flags & KEY_STICKY) != 0;
+
+        if (key.codes == null && !TextUtils.isEmpty(key.label)) {
+            key.codes = new int[] {key.label.charAt(0)};
+        }
+
+        return key;
+    }
+
+    /**
+     * Same as Keyboard.getDimensionOrFraction
+     */
+    private int readDimension(ByteBuffer in, Resources res, int base, int defValue) {
+        switch (in.get()) {
+            case DIM_RESOURCE:
+                int resId = getResId(res, readString(in));
+                return resId != 0 ? res.getDimensionPixelOffset(resId) : defValue;
+            case DIM_FRACTION:
+                return Math.round(in.getFloat() * base);
+            case DIM_VALUE:
+                float value = in.getFloat();
+                return (int) TypedValue.applyDimension(in.get(), value, res.getDisplayMetrics());
+        }
+
+        return defValue;
+    }
+
+    private CharSequence readText(ByteBuffer in, Resources res) {
+        switch (in.get()) {
+            case TEXT_LITERAL:
+                return readString(in);
+            case TEXT_RESOURCE:
+                int resId = getResId(res, readString(in));
+                return resId != 0 ? res.getText(resId) : null;
+        }
+
+        return null;
+    }
+
+    private int readResId(ByteBuffer in, Resources res) {
+        return in.get() == TEXT_RESOURCE ? getResId(res, readString(in)) : 0;
+    }
+
+    /**
+     * @param name type/entry, e.g. xml/shift_1
+     */
+    private int getResId(Resources res, String name) {
+        int resId = ResourceIds.get(res, name);
+
+        if (resId == 0) {
+            Log.e(TAG, "Resource not found: " + name);
+        }
+
+        return resId;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort()];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -7,12 +7,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class KeyboardInfoAdapter implements CheckedSource {
-    private final Context mContext;
+    private final KeyboardInfoRegistry mRegistry;
     private final List<KeyboardInfo> mInfos;
 
     public KeyboardInfoAdapter(Context context) {
-        mContext = context;
-        mInfos = ResKeyboardInfo.getAllKeyboardInfos(context);
+        mRegistry = KeyboardInfoRegistry.instance(context);
+        mInfos = mRegistry.getAll();
     }
 
     @Override
@@ -45,7 +45,7 @@ public class KeyboardInfoAdapter implements CheckedSource {
                     }
 
                     mInfo.setEnabled(checked);
-                    ResKeyboardInfo.updateAllKeyboardInfos(mContext, mInfos);
+                    mRegistry.update(mInfos);
                 }
 
                 @Override
@@ -0,0 +1,164 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.preference.PreferenceManager;
+import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardInfo;
+import com.liskovsoft.leankeykeyboard.R;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * All built-in languages with their enabled state.<br/>
+ * Languages are parsed once, enabled state is kept in sync with prefs through the change listener.<br/>
+ * NOTE: Registry lives as long as the process, so it keeps only weak references to its listeners
+ */
+public class KeyboardInfoRegistry {
+    private static KeyboardInfoRegistry sInstance;
+    private final SharedPreferences mPrefs;
+    private final List<ResKeyboardInfo> mInfos = new ArrayList<>();
+    private final Map<String, ResKeyboardInfo> mInfosByPrefKey = new HashMap<>();
+    private final List<WeakReference<OnChangeListener>> mListeners = new CopyOnWriteArrayList<>();
+    /**
+     * NOTE: Prefs keep only weak reference to the listener
+     */
+    private final OnSharedPreferenceChangeListener mPrefsListener = this::onPrefChanged;
+
+    public interface OnChangeListener {
+        /**
+         * Enabled state of some language has changed
+         */
+        void onChange();
+    }
+
+    public static synchronized KeyboardInfoRegistry instance(Context context) {
+        if (sInstance == null) {
+            sInstance = new KeyboardInfoRegistry(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    private KeyboardInfoRegistry(Context context) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+
+        for (String langPair : context.getResources().getStringArray(R.array.additional_languages)) {
+            ResKeyboardInfo info = ResKeyboardInfo.parse(langPair);
+            info.setEnabled(mPrefs.getBoolean(info.getPrefKey(), false));
+            mInfos.add(info);
+            mInfosByPrefKey.put(info.getPrefKey(), info);
+        }
+
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
+    }
+
+    /**
+     * @return copies, so they could be modified and passed to {@link #update(List)}
+     */
+    public synchronized List<KeyboardInfo> getAll() {
+        List<KeyboardInfo> result = new ArrayList<>(mInfos.size());
+
+        for (ResKeyboardInfo info : mInfos) {
+            result.add(new ResKeyboardInfo(info));
+        }
+
+        return result;
+    }
+
+    /**
+     * Persist enabled state. In-memory state is updated immediately, prefs are written asynchronously.
+     */
+    public void update(List<KeyboardInfo> infos) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        boolean changed = false;
+
+        synchronized (this) {
+            for (KeyboardInfo info : infos) {
+                String key = info instanceof ResKeyboardInfo ? ((ResKeyboardInfo) info).getPrefKey() : info.toString();
+                editor.putBoolean(key, info.isEnabled());
+                changed |= setEnabled(key, info.isEnabled());
+            }
+        }
+
+        editor.apply();
+
+        if (changed) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * @param listener held weakly, so caller should keep a reference to it
+     */
+    public synchronized void addListener(OnChangeListener listener) {
+        if (indexOf(listener) == -1) {
+            mListeners.add(new WeakReference<>(listener));
+        }
+    }
+
+    public synchronized void removeListener(OnChangeListener listener) {
+        int index = indexOf(listener);
+
+        if (index != -1) {
+            mListeners.remove(index);
+        }
+    }
+
+    /**
+     * Catches changes made outside of the registry (e.g. prefs restored from backup)
+     */
+    private void onPrefChanged(SharedPreferences prefs, String key) {
+        boolean changed;
+
+        synchronized (this) {
+            // NOTE: other prefs may have non-boolean type
+            changed = mInfosByPrefKey.containsKey(key) && setEnabled(key, prefs.getBoolean(key, false));
+        }
+
+        if (changed) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * @return true if state has changed
+     */
+    private boolean setEnabled(String prefKey, boolean enabled) {
+        ResKeyboardInfo info = mInfosByPrefKey.get(prefKey);
+
+        if (info == null || info.isEnabled() == enabled) {
+            return false;
+        }
+
+        info.setEnabled(enabled);
+        return true;
+    }
+
+    private int indexOf(OnChangeListener listener) {
+        for (int i = 0; i < mListeners.size(); i++) {
+            if (mListeners.get(i).get() == listener) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void notifyListeners() {
+        for (WeakReference<OnChangeListener> reference : mListeners) {
+            OnChangeListener listener = reference.get();
+
+            if (listener != null) {
+                listener.onChange();
+            } else {
+                mListeners.remove(reference);
+            }
+        }
+    }
+}
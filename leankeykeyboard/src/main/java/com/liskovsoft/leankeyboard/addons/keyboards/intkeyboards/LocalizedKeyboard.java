@@ -0,0 +1,48 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.inputmethodservice.Keyboard;
+import com.liskovsoft.leankeyboard.addons.resize.KeyboardWrapper;
+import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Language specific variant of the keyboard that is shared between languages (e.g. sym).<br/>
+ * Keys are shared, only space key (language name) is own copy. So shared keys are never changed.
+ */
+class LocalizedKeyboard extends KeyboardWrapper {
+    LocalizedKeyboard(Context context, Keyboard keyboard, Drawable spaceIcon) {
+        super(context, keyboard);
+
+        List<Key> keys = new ArrayList<>(keyboard.getKeys());
+        Row row = new Row(this);
+
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+
+            if (key.codes[0] == LeanbackKeyboardView.ASCII_SPACE) {
+                Key spaceKey = copyKey(row, key);
+                spaceKey.icon = spaceIcon;
+                keys.set(i, spaceKey);
+            }
+        }
+
+        setKeys(keys);
+    }
+
+    /**
+     * Each language has its own instance (unlike {@link KeyboardWrapper})
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+}
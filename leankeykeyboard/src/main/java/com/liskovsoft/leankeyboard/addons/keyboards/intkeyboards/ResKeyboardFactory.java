@@ -13,6 +13,7 @@ import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardFactory;
 import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardInfo;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+import com.liskovsoft.leankeyboard.utils.ResourceIds;
 import com.liskovsoft.leankeyboard.utils.TextDrawable;
 import com.liskovsoft.leankeykeyboard.R;
 
@@ -26,6 +27,15 @@ public class ResKeyboardFactory implements KeyboardFactory {
     private static final String TAG = ResKeyboardFactory.class.getSimpleName();
     private final Context mContext;
     private Map<String, Drawable> mCachedSpace;
+    /**
+     * Keyboards that are the same for all languages (by xml id), loaded once per {@link #getAllAvailableKeyboards}.<br/>
+     * NOTE: Keys are shared, so they aren't changed (see {@link LocalizedKeyboard}).
+     */
+    private final Map<Integer, Keyboard> mTemplates = new HashMap<>();
+    /**
+     * Adapter of the update listener (registry holds it weakly)
+     */
+    private KeyboardInfoRegistry.OnChangeListener mRegistryListener;
 
     public ResKeyboardFactory(Context ctx) {
         mContext = ctx;
@@ -35,7 +45,8 @@ public class ResKeyboardFactory implements KeyboardFactory {
     @Override
     public List<? extends KeyboardBuilder> getAllAvailableKeyboards(Context context) {
         List<KeyboardBuilder> result = new ArrayList<>();
-        List<KeyboardInfo> infos = ResKeyboardInfo.getAllKeyboardInfos(context);
+        clearTemplates();
+        List<KeyboardInfo> infos = KeyboardInfoRegistry.instance(context).getAll();
 
         for (final KeyboardInfo info : infos) {
             if (info.isEnabled()) {
@@ -48,7 +59,6 @@ public class ResKeyboardFactory implements KeyboardFactory {
             KeyboardInfo defaultKbd = findDefaultKeyboard(infos);
             result.add(createKeyboard(defaultKbd));
             defaultKbd.setEnabled(true);
-            //ResKeyboardInfo.updateAllKeyboardInfos(mContext, infos);
         }
 
         return result;
@@ -82,58 +92,99 @@ public class ResKeyboardFactory implements KeyboardFactory {
             @Override
             public Keyboard createAbcKeyboard() {
                 String prefix = info.isAzerty() ? "azerty_" : "qwerty_";
-                int kbResId = mContext.getResources().getIdentifier(prefix + langCode, "xml", mContext.getPackageName());
-                Keyboard keyboard = new Keyboard(mContext, kbResId);
+                int kbResId = ResourceIds.get(mContext.getResources(), "xml", prefix + langCode);
+                Keyboard keyboard = CompiledLayouts.load(mContext, kbResId);
                 Log.d(TAG, "Creating keyboard... " + info.getLangName());
                 return localizeKeys(keyboard, info);
             }
 
             @Override
             public Keyboard createSymKeyboard() {
-                Keyboard keyboard = new Keyboard(mContext, R.xml.sym_en_us);
-                return localizeKeys(keyboard, info);
+                Keyboard keyboard = getTemplate(R.xml.sym_en_us);
+                Key spaceKey = findSpaceKey(keyboard);
+
+                if (spaceKey == null) {
+                    return keyboard;
+                }
+
+                return new LocalizedKeyboard(mContext, keyboard, getSpaceIcon(spaceKey.icon, info));
             }
 
             @Override
             public Keyboard createNumKeyboard() {
-                return new Keyboard(mContext, R.xml.number);
+                return getTemplate(R.xml.number);
             }
         };
     }
 
+    private synchronized void clearTemplates() {
+        mTemplates.clear();
+    }
+
+    private synchronized Keyboard getTemplate(int xmlResId) {
+        Keyboard template = mTemplates.get(xmlResId);
+
+        if (template == null) {
+            template = CompiledLayouts.load(mContext, xmlResId);
+            mTemplates.put(xmlResId, template);
+        }
+
+        return template;
+    }
+
     @Override
-    public boolean needUpdate() {
-        return ResKeyboardInfo.needUpdate();
+    public void setOnUpdateListener(OnUpdateListener listener) {
+        KeyboardInfoRegistry registry = KeyboardInfoRegistry.instance(mContext);
+
+        if (mRegistryListener != null) {
+            registry.removeListener(mRegistryListener);
+            mRegistryListener = null;
+        }
+
+        if (listener != null) {
+            mRegistryListener = listener::onUpdate;
+            registry.addListener(mRegistryListener);
+        }
     }
 
     private Keyboard localizeKeys(Keyboard keyboard, KeyboardInfo info) {
-        List<Key> keys = keyboard.getKeys();
+        Key spaceKey = findSpaceKey(keyboard);
+
+        if (spaceKey != null) {
+            spaceKey.icon = getSpaceIcon(spaceKey.icon, info);
+        }
 
-        for (Key key : keys) {
+        return keyboard;
+    }
+
+    private static Key findSpaceKey(Keyboard keyboard) {
+        for (Key key : keyboard.getKeys()) {
             if (key.codes[0] == LeanbackKeyboardView.ASCII_SPACE) {
-                localizeSpace(key, info);
-                break;
+                return key;
             }
         }
 
-        return keyboard;
+        return null;
     }
 
-    private void localizeSpace(Key key, KeyboardInfo info) {
+    /**
+     * NOTE: Keyboards are built on the main and prefetch threads
+     */
+    private synchronized Drawable getSpaceIcon(Drawable icon, KeyboardInfo info) {
         if (mCachedSpace.containsKey(info.getLangCode())) {
-            key.icon = mCachedSpace.get(info.getLangCode());
-            return;
+            return mCachedSpace.get(info.getLangCode());
         }
 
-        TextDrawable drawable = new TextDrawable(mContext, key.icon);
+        TextDrawable drawable = new TextDrawable(mContext, icon);
         drawable.setText(info.getLangName());
         drawable.setTextAlign(Layout.Alignment.ALIGN_CENTER);
         //Customize text size and color
         drawable.setTextColor(Color.WHITE);
         drawable.setTextSizeFactor(0.3f);
         drawable.setTypeface(Typeface.SANS_SERIF, Typeface.BOLD);
-        key.icon = drawable;
 
         mCachedSpace.put(info.getLangCode(), drawable);
+
+        return drawable;
     }
 }
@@ -1,66 +1,50 @@
 package com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards;
 
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardInfo;
-import com.liskovsoft.leankeykeyboard.R;
-
-import java.util.ArrayList;
-import java.util.List;
 
+/**
+ * Use {@link KeyboardInfoRegistry} to obtain instances
+ */
 public class ResKeyboardInfo implements KeyboardInfo {
-    private static boolean sNeedUpdate;
     private boolean mEnabled;
     private String mLangCode;
     private String mLangName;
     private boolean mIsAzerty;
+    private String mPrefKey;
 
-    public static List<KeyboardInfo> getAllKeyboardInfos(Context ctx) {
-        List<KeyboardInfo> result = new ArrayList<>();
-        String[] langs = ctx.getResources().getStringArray(R.array.additional_languages);
-        for (final String langPair : langs) {
-            String[] pairs = langPair.split("\\|");
-            final String langName = pairs[0];
-            final String langCode = pairs[1];
-            final boolean isAzerty = pairs.length >= 3 && "azerty".equals(pairs[2]);
-            KeyboardInfo info = new ResKeyboardInfo();
-            info.setLangName(langName);
-            info.setLangCode(langCode);
-            info.setIsAzerty(isAzerty);
-            // sync with prefs
-            syncWithPrefs(ctx, info);
-            result.add(info);
-        }
-        sNeedUpdate = false;
-        return result;
+    ResKeyboardInfo() {
     }
 
-    public static void updateAllKeyboardInfos(Context ctx, List<KeyboardInfo> infos) {
-        for (KeyboardInfo info : infos) {
-            // update prefs
-            updatePrefs(ctx, info);
-        }
-        sNeedUpdate = true;
+    ResKeyboardInfo(ResKeyboardInfo info) {
+        mEnabled = info.mEnabled;
+        mLangCode = info.mLangCode;
+        mLangName = info.mLangName;
+        mIsAzerty = info.mIsAzerty;
+        mPrefKey = info.mPrefKey;
     }
 
-    private static void syncWithPrefs(Context ctx, KeyboardInfo info) {
-        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(ctx);
-        final boolean kbdEnabled = sharedPreferences.getBoolean(info.toString(), false);
-        info.setEnabled(kbdEnabled);
+    /**
+     * @param langPair item of the additional_languages array, e.g. English|en_us|azerty
+     */
+    static ResKeyboardInfo parse(String langPair) {
+        String[] pairs = langPair.split("\\|");
+        ResKeyboardInfo info = new ResKeyboardInfo();
+        info.setLangName(pairs[0]);
+        info.setLangCode(pairs[1]);
+        info.setIsAzerty(pairs.length >= 3 && "azerty".equals(pairs[2]));
+        return info;
     }
 
-    private static void updatePrefs(Context ctx, KeyboardInfo info) {
-        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(ctx);
-
-        final SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putBoolean(info.toString(), info.isEnabled());
-        editor.apply();
-    }
+    /**
+     * Name of the pref that holds enabled state
+     */
+    String getPrefKey() {
+        if (mPrefKey == null) {
+            mPrefKey = toString();
+        }
 
-    public static boolean needUpdate() {
-        return sNeedUpdate;
+        return mPrefKey;
     }
 
     @Override
@@ -81,11 +65,13 @@ public class ResKeyboardInfo implements KeyboardInfo {
     @Override
     public void setLangName(String langName) {
         mLangName = langName;
+        mPrefKey = null;
     }
 
     @Override
     public void setLangCode(String langCode) {
         mLangCode = langCode;
+        mPrefKey = null;
     }
 
     @Override
@@ -101,6 +87,7 @@ public class ResKeyboardInfo implements KeyboardInfo {
     @Override
     public void setIsAzerty(boolean isAzerty) {
         mIsAzerty = isAzerty;
+        mPrefKey = null;
     }
 
     @NonNull
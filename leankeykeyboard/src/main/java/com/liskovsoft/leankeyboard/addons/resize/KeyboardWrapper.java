@@ -10,6 +10,10 @@ import java.util.List;
 
 public class KeyboardWrapper extends Keyboard {
     private Keyboard mKeyboard;
+    /**
+     * Own keys or null if keys of the wrapped keyboard are used
+     */
+    private List<Key> mKeys;
     private int mHeight = -1;
     private float mHeightFactor = 1.0f;
     private float mWidthFactor = 1.0f;
@@ -30,16 +34,18 @@ public class KeyboardWrapper extends Keyboard {
         super(context, layoutTemplateResId, characters, columns, horizontalPadding);
     }
 
-    public static KeyboardWrapper from(Keyboard keyboard, Context context) {
-        KeyboardWrapper wrapper = new KeyboardWrapper(context, R.xml.empty_kbd);
-        wrapper.mKeyboard = keyboard;
+    protected KeyboardWrapper(Context context, Keyboard keyboard) {
+        this(context, R.xml.empty_kbd);
+        mKeyboard = keyboard;
+    }
 
-        return wrapper;
+    public static KeyboardWrapper from(Keyboard keyboard, Context context) {
+        return new KeyboardWrapper(context, keyboard);
     }
 
     @Override
     public List<Key> getKeys() {
-        return mKeyboard.getKeys();
+        return mKeys != null ? mKeys : mKeyboard.getKeys();
     }
 
     @Override
@@ -72,9 +78,12 @@ public class KeyboardWrapper extends Keyboard {
         return mKeyboard.getShiftKeyIndex();
     }
 
+    /**
+     * NOTE: Wrapped keyboard isn't resized, so coordinates are scaled back
+     */
     @Override
     public int[] getNearestKeys(int x, int y) {
-        return mKeyboard.getNearestKeys(x, y);
+        return mKeyboard.getNearestKeys((int) (x / mWidthFactor), (int) (y / mHeightFactor));
     }
 
     public void setHeightFactor(float factor) {
@@ -85,6 +94,35 @@ public class KeyboardWrapper extends Keyboard {
         mWidthFactor = factor;
     }
 
+    /**
+     * Replace keys of the wrapped keyboard (e.g. resized or relabeled copies), so shared keys stay untouched
+     */
+    protected void setKeys(List<Key> keys) {
+        mKeys = keys;
+    }
+
+    public static Key copyKey(Row row, Key src) {
+        Key key = new Key(row);
+        key.codes = src.codes;
+        key.label = src.label;
+        key.icon = src.icon;
+        key.iconPreview = src.iconPreview;
+        key.text = src.text;
+        key.popupCharacters = src.popupCharacters;
+        key.popupResId = src.popupResId;
+        key.width = src.width;
+        key.height = src.height;
+        key.gap = src.gap;
+        key.x = src.x;
+        key.y = src.y;
+        key.edgeFlags = src.edgeFlags;
+        key.modifier = src.modifier;
+        key.sticky = src.sticky;
+        key.repeatable = src.repeatable;
+        key.on = src.on;
+        return key;
+    }
+
     /**
      * Wrapper fix: {@link LeanbackKeyboardContainer#onModeChangeClick}
      */
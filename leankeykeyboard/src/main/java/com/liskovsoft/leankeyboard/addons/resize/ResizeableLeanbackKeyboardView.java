@@ -3,18 +3,30 @@ package com.liskovsoft.leankeyboard.addons.resize;
 import android.content.Context;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.Keyboard.Key;
+import android.inputmethodservice.Keyboard.Row;
 import android.util.AttributeSet;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+import com.liskovsoft.leankeykeyboard.R;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class ResizeableLeanbackKeyboardView extends LeanbackKeyboardView {
     private final LeanKeyPreferences mPrefs;
     private final int mKeyTextSizeOrigin;
     private final int mModeChangeTextSizeOrigin;
     private final float mSizeFactor = 1.3f;
-    private int mKeyOriginWidth;
+    /**
+     * Resized copies of the keys. Keys could be shared between keyboards (e.g. sym), so they aren't resized in place.
+     */
+    private final Map<Key, Key> mScaledKeys = new WeakHashMap<>();
+    /**
+     * NOTE: Copies belong to the own keyboard, so they don't hold the original keys in {@link #mScaledKeys}
+     */
+    private Row mScaledRow;
 
     public ResizeableLeanbackKeyboardView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -24,7 +36,7 @@ public class ResizeableLeanbackKeyboardView extends LeanbackKeyboardView {
     }
 
     @Override
-    public void setKeyboard(Keyboard keyboard, boolean isAbc, boolean isNum) {
+    protected Keyboard onPrepareKeyboard(Keyboard keyboard) {
         if (mPrefs.getEnlargeKeyboard()) {
             mKeyTextSize = (int) (mKeyTextSizeOrigin * mSizeFactor);
             mModeChangeTextSize = (int) (mModeChangeTextSizeOrigin * mSizeFactor);
@@ -35,40 +47,39 @@ public class ResizeableLeanbackKeyboardView extends LeanbackKeyboardView {
             mModeChangeTextSize = mModeChangeTextSizeOrigin;
         }
 
-        mPaint.setTextSize(mKeyTextSize);
-
-        super.setKeyboard(keyboard, isAbc, isNum);
+        return super.onPrepareKeyboard(keyboard);
     }
 
     private Keyboard updateKeyboard(Keyboard keyboard) {
-        List<Key> keys = keyboard.getKeys();
-
-        if (isNotSizedYet(keys.get(0))) {
-            for (Key key : keys) {
-                key.width *= mSizeFactor;
-                key.height *= mSizeFactor;
-                key.gap *= mSizeFactor;
-                key.x *= mSizeFactor;
-                key.y *= mSizeFactor;
-            }
-        }
-
         KeyboardWrapper wrapper = KeyboardWrapper.from(keyboard, getContext());
         wrapper.setHeightFactor(mSizeFactor);
         wrapper.setWidthFactor(mSizeFactor);
+        wrapper.setKeys(getScaledKeys(keyboard.getKeys()));
 
         return wrapper;
     }
 
-    private boolean isNotSizedYet(Key key) {
-        boolean result = false;
-
-        if (mKeyOriginWidth == 0) {
-            mKeyOriginWidth = key.width;
+    private List<Key> getScaledKeys(List<Key> keys) {
+        if (mScaledRow == null) {
+            mScaledRow = new Row(new Keyboard(getContext(), R.xml.empty_kbd));
         }
 
-        if (mKeyOriginWidth == key.width) {
-            result = true;
+        List<Key> result = new ArrayList<>(keys.size());
+
+        for (Key key : keys) {
+            Key scaledKey = mScaledKeys.get(key);
+
+            if (scaledKey == null) {
+                scaledKey = KeyboardWrapper.copyKey(mScaledRow, key);
+                scaledKey.width *= mSizeFactor;
+                scaledKey.height *= mSizeFactor;
+                scaledKey.gap *= mSizeFactor;
+                scaledKey.x *= mSizeFactor;
+                scaledKey.y *= mSizeFactor;
+                mScaledKeys.put(key, scaledKey);
+            }
+
+            result.add(scaledKey);
         }
 
         return result;
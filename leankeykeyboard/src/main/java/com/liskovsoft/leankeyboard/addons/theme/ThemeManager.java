@@ -11,6 +11,7 @@ import android.widget.RelativeLayout;
 import androidx.core.content.ContextCompat;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+import com.liskovsoft.leankeyboard.utils.ResourceIds;
 import com.liskovsoft.leankeykeyboard.R;
 
 public class ThemeManager {
@@ -39,10 +40,11 @@ public class ThemeManager {
         } else {
             applyForTheme((String themeId) -> {
                 Resources resources = mContext.getResources();
-                int keyboardBackgroundResId = resources.getIdentifier("keyboard_background_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int candidateBackgroundResId = resources.getIdentifier("candidate_background_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int enterFontColorResId = resources.getIdentifier("enter_key_font_color_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int keyTextColorResId = resources.getIdentifier("key_text_default_" + themeId.toLowerCase(), "color", mContext.getPackageName());
+                String suffix = themeId.toLowerCase();
+                int keyboardBackgroundResId = ResourceIds.get(resources, "color", "keyboard_background_" + suffix);
+                int candidateBackgroundResId = ResourceIds.get(resources, "color", "candidate_background_" + suffix);
+                int enterFontColorResId = ResourceIds.get(resources, "color", "enter_key_font_color_" + suffix);
+                int keyTextColorResId = ResourceIds.get(resources, "color", "key_text_default_" + suffix);
 
                 applyKeyboardColors(
                         keyboardBackgroundResId,
@@ -51,7 +53,7 @@ public class ThemeManager {
                         keyTextColorResId
                 );
 
-                int shiftLockOnResId = resources.getIdentifier("ic_ime_shift_lock_on_" + themeId.toLowerCase(), "drawable", mContext.getPackageName());
+                int shiftLockOnResId = ResourceIds.get(resources, "drawable", "ic_ime_shift_lock_on_" + suffix);
 
                 applyShiftDrawable(shiftLockOnResId);
             });
@@ -68,7 +70,7 @@ public class ThemeManager {
         } else {
             applyForTheme((String themeId) -> {
                 Resources resources = mContext.getResources();
-                int candidateFontColorResId = resources.getIdentifier("candidate_font_color_" + themeId.toLowerCase(), "color", mContext.getPackageName());
+                int candidateFontColorResId = ResourceIds.get(resources, "color", "candidate_font_color_" + themeId.toLowerCase());
                 applySuggestionsColors(candidateFontColorResId);
             });
         }
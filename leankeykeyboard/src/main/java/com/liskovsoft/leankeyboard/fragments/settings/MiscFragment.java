@@ -26,6 +26,7 @@ public class MiscFragment extends BaseSettingsFragment {
         addCheckedAction(R.string.enable_suggestions, R.string.enable_suggestions_desc, mPrefs::getSuggestionsEnabled, mPrefs::setSuggestionsEnabled);
         addCheckedAction(R.string.show_launcher_icon, R.string.show_launcher_icon_desc, this::getLauncherIconShown, this::setLauncherIconShown);
         addCheckedAction(R.string.enable_cyclic_navigation, R.string.enable_cyclic_navigation_desc, mPrefs::getCyclicNavigationEnabled, mPrefs::setCyclicNavigationEnabled);
+        addCheckedAction(R.string.enable_single_view_rendering, R.string.enable_single_view_rendering_desc, mPrefs::getSingleViewRenderingEnabled, mPrefs::setSingleViewRenderingEnabled);
     }
 
     @NonNull
@@ -0,0 +1,272 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves cursor through mixed RTL/LTR text without scanning the text on every key press.<br/>
+ * Keeps runs of the same direction (each run starts at a strong character, neutrals belong to the preceding run).
+ * Runs are rebuilt only around edited range.<br/>
+ * Direction of a text is the direction of its first strong character (LTR if there's none),
+ * same as {@link androidx.core.text.BidiFormatter#isRtl(CharSequence)}.
+ */
+class BidiCursorEngine {
+    private static final int NEUTRAL = 0;
+    private static final int LTR = 1;
+    private static final int RTL = 2;
+    private final CharSequence mText;
+    private final List<Run> mRuns = new ArrayList<>();
+    /**
+     * Index of the last found run. Cursor usually moves by one char, so search starts here.
+     */
+    private int mLastRun;
+
+    private static final class Run {
+        private int mStart;
+        private int mEnd;
+        private int mLastStrong;
+        private final boolean mRtl;
+
+        private Run(int start, boolean rtl) {
+            mStart = start;
+            mLastStrong = start;
+            mRtl = rtl;
+        }
+
+        private void shift(int delta) {
+            mStart += delta;
+            mEnd += delta;
+            mLastStrong += delta;
+        }
+    }
+
+    /**
+     * @param text text that is tracked (edits should be reported with {@link #onReplace})
+     */
+    BidiCursorEngine(CharSequence text) {
+        mText = text;
+    }
+
+    /**
+     * Text has been changed completely
+     */
+    void reset() {
+        mRuns.clear();
+        mLastRun = 0;
+        scan(0, mText.length(), mRuns);
+    }
+
+    /**
+     * Report edit. Call after the text has been changed.
+     * @param start position of the edit
+     * @param removedLength length of the replaced text
+     * @param insertedLength length of the new text
+     */
+    void onReplace(int start, int removedLength, int insertedLength) {
+        if (removedLength == 0 && insertedLength == 0) {
+            return;
+        }
+
+        int oldEnd = start + removedLength;
+        int delta = insertedLength - removedLength;
+
+        // rescan from the run that contains char before the edit (its start isn't changed)
+        int first = findRun(start - 1);
+        int scanStart;
+        int last;
+
+        if (first == -1) {
+            first = 0;
+            last = 0;
+            scanStart = start;
+        } else {
+            last = first + 1;
+            scanStart = mRuns.get(first).mStart;
+        }
+
+        // ...till the first run that starts after removed text
+        while (last < mRuns.size() && mRuns.get(last).mStart < oldEnd) {
+            last++;
+        }
+
+        for (int i = last; i < mRuns.size(); i++) {
+            mRuns.get(i).shift(delta);
+        }
+
+        int scanEnd = last < mRuns.size() ? mRuns.get(last).mStart : mText.length();
+
+        List<Run> scanned = new ArrayList<>();
+        scan(scanStart, scanEnd, scanned);
+
+        mRuns.subList(first, last).clear();
+        mRuns.addAll(first, scanned);
+
+        // first unchanged run could continue the last scanned one
+        int next = first + scanned.size();
+
+        if (!scanned.isEmpty() && next < mRuns.size()) {
+            Run run = mRuns.get(next - 1);
+            Run nextRun = mRuns.get(next);
+
+            if (run.mRtl == nextRun.mRtl) {
+                run.mEnd = nextRun.mEnd;
+                run.mLastStrong = nextRun.mLastStrong;
+                mRuns.remove(next);
+            }
+        }
+
+        mLastRun = first;
+    }
+
+    /**
+     * Direction of the text before position
+     */
+    boolean isRtlBefore(int position) {
+        return !mRuns.isEmpty() && mRuns.get(0).mStart < position && mRuns.get(0).mRtl;
+    }
+
+    /**
+     * Direction of the text after position
+     */
+    boolean isRtlAfter(int position) {
+        if (mRuns.isEmpty()) {
+            return false;
+        }
+
+        if (position < mRuns.get(0).mStart) {
+            return mRuns.get(0).mRtl;
+        }
+
+        int index = findRun(position);
+
+        if (index == -1) {
+            return false;
+        }
+
+        Run run = mRuns.get(index);
+
+        if (position <= run.mLastStrong) {
+            return run.mRtl;
+        }
+
+        // only neutrals left in this run, so next one (if any) has other direction
+        return index + 1 < mRuns.size() && mRuns.get(index + 1).mRtl;
+    }
+
+    /**
+     * Next cursor position after LEFT/RIGHT key
+     * @param lenBefore length of the text before cursor
+     * @param lenAfter length of the text after cursor
+     */
+    int getNextPosition(int lenBefore, int lenAfter, boolean left) {
+        int index = lenBefore;
+
+        if (left) {
+            if (lenBefore > 0) {
+                if (!isRtlBefore(lenBefore)) {
+                    index = lenBefore - 1;
+                } else {
+                    if (lenAfter == 0) {
+                        index = 1;
+                    } else if (lenAfter == 1) {
+                        index = 0;
+                    } else {
+                        index = lenBefore + 1;
+                    }
+                }
+            }
+        } else {
+            if (lenAfter > 0) {
+                if (!isRtlAfter(lenBefore)) {
+                    index = lenBefore + 1;
+                } else {
+                    if (lenBefore == 0) {
+                        index = lenAfter - 1;
+                    } else if (lenBefore == 1) {
+                        index = lenAfter + 1;
+                    } else {
+                        index = lenBefore - 1;
+                    }
+                }
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * @return index of the run that contains position or -1
+     */
+    private int findRun(int position) {
+        if (mRuns.isEmpty()) {
+            return -1;
+        }
+
+        int index = Math.min(mLastRun, mRuns.size() - 1);
+
+        while (index > 0 && mRuns.get(index).mStart > position) {
+            index--;
+        }
+
+        while (index < mRuns.size() && mRuns.get(index).mEnd <= position) {
+            index++;
+        }
+
+        if (index == mRuns.size() || mRuns.get(index).mStart > position) {
+            return -1;
+        }
+
+        mLastRun = index;
+
+        return index;
+    }
+
+    /**
+     * Split range into runs. Leading neutrals aren't included into any run.
+     */
+    private void scan(int start, int end, List<Run> result) {
+        Run run = null;
+
+        for (int i = start; i < end; ) {
+            int codePoint = Character.codePointAt(mText, i);
+            int direction = getDirection(codePoint);
+
+            if (direction != NEUTRAL) {
+                boolean rtl = direction == RTL;
+
+                if (run == null || run.mRtl != rtl) {
+                    if (run != null) {
+                        run.mEnd = i;
+                    }
+
+                    run = new Run(i, rtl);
+                    result.add(run);
+                }
+
+                run.mLastStrong = i;
+            }
+
+            i += Character.charCount(codePoint);
+        }
+
+        if (run != null) {
+            run.mEnd = end;
+        }
+    }
+
+    private static int getDirection(int codePoint) {
+        switch (Character.getDirectionality(codePoint)) {
+            case Character.DIRECTIONALITY_LEFT_TO_RIGHT:
+            case Character.DIRECTIONALITY_LEFT_TO_RIGHT_EMBEDDING:
+            case Character.DIRECTIONALITY_LEFT_TO_RIGHT_OVERRIDE:
+                return LTR;
+            case Character.DIRECTIONALITY_RIGHT_TO_LEFT:
+            case Character.DIRECTIONALITY_RIGHT_TO_LEFT_ARABIC:
+            case Character.DIRECTIONALITY_RIGHT_TO_LEFT_EMBEDDING:
+            case Character.DIRECTIONALITY_RIGHT_TO_LEFT_OVERRIDE:
+                return RTL;
+            default:
+                return NEUTRAL;
+        }
+    }
+}
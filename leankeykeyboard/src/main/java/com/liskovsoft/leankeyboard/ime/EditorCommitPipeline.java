@@ -0,0 +1,353 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.InputMethodService;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.inputmethod.InputConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends edits of one logical entry (key press, suggestion click etc) to the editor within single batch edit.<br/>
+ * During rapid input (e.g. key repeat) or while the editor falls behind, consecutive characters and backspaces
+ * are coalesced and sent a bit later, so the editor receives one commit instead of many.<br/>
+ * Edits are applied to the {@link EditorTextMirror} immediately and sent through the {@link EditorDispatcher}.
+ */
+class EditorCommitPipeline implements EditorDispatcher.BackpressureListener, EditorTextMirror.Fetcher, EditorText.Editor {
+    private static final String TAG = EditorCommitPipeline.class.getSimpleName();
+    /**
+     * Entries that come faster than that are considered as rapid input
+     */
+    private static final long RAPID_INPUT_INTERVAL_MS = 100;
+    /**
+     * Max delay of coalesced edits
+     */
+    private static final long FLUSH_DELAY_MS = 50;
+    private static final int OP_COMMIT_TEXT = 0;
+    private static final int OP_DELETE_SURROUNDING_TEXT = 1;
+    private static final int OP_SET_SELECTION = 2;
+    private final InputMethodService mService;
+    private final EditorTextMirror mMirror;
+    private final EditorDispatcher mDispatcher;
+    private final Handler mHandler = new Handler();
+    private final Runnable mFlushTask = this::onDelayedFlush;
+    private final List<Op> mPendingOps = new ArrayList<>();
+    private Runnable mOnDelayedFlush;
+    private boolean mEntryCoalescible;
+    private boolean mFlushScheduled;
+    private long mLastEntryTimeMs;
+    private int mEntryCount;
+    private int mIpcCount;
+
+    /**
+     * Sends edits right away. Used on the dispatcher thread.
+     */
+    private static final class ConnectionEditor implements EditorText.Editor {
+        private final InputConnection mConnection;
+
+        private ConnectionEditor(InputConnection connection) {
+            mConnection = connection;
+        }
+
+        @Override
+        public void commitText(CharSequence text) {
+            mConnection.commitText(text, 1);
+        }
+
+        @Override
+        public void deleteBeforeCursor(int length) {
+            mConnection.deleteSurroundingText(length, 0);
+        }
+
+        @Override
+        public void deleteSurroundingText(int beforeLength, int afterLength) {
+            mConnection.deleteSurroundingText(beforeLength, afterLength);
+        }
+
+        @Override
+        public void setSelection(int start, int end) {
+            mConnection.setSelection(start, end);
+        }
+    }
+
+    private static final class Op {
+        private final int mType;
+        private final StringBuilder mText = new StringBuilder();
+        private int mArg1;
+        private int mArg2;
+
+        private Op(int type) {
+            mType = type;
+        }
+    }
+
+    EditorCommitPipeline(InputMethodService service, EditorTextMirror mirror, EditorDispatcher dispatcher) {
+        mService = service;
+        mMirror = mirror;
+        mDispatcher = dispatcher;
+        mDispatcher.setBackpressureListener(this);
+    }
+
+    @Override
+    public void onBackpressure(boolean congested) {
+        if (!congested && !mPendingOps.isEmpty()) {
+            onDelayedFlush();
+        }
+    }
+
+    /**
+     * @param callback invoked after coalesced edits are sent (e.g. to update suggestions)
+     */
+    void setOnDelayedFlush(Runnable callback) {
+        mOnDelayedFlush = callback;
+    }
+
+    void beginEntry() {
+        mEntryCount++;
+        mEntryCoalescible = true;
+    }
+
+    /**
+     * @return true if edits have been sent, false if they are postponed (coalesced with next entries)
+     */
+    boolean endEntry() {
+        long now = SystemClock.uptimeMillis();
+        boolean rapidInput = now - mLastEntryTimeMs < RAPID_INPUT_INTERVAL_MS;
+        mLastEntryTimeMs = now;
+
+        if (mEntryCoalescible && (rapidInput || mDispatcher.isCongested())) {
+            scheduleFlush();
+            return mPendingOps.isEmpty();
+        }
+
+        return flush(false);
+    }
+
+    @Override
+    public void commitText(CharSequence text) {
+        mMirror.onCommitText(text);
+        Op last = getLastOp();
+
+        if (last != null && last.mType == OP_COMMIT_TEXT) {
+            last.mText.append(text);
+        } else {
+            Op op = new Op(OP_COMMIT_TEXT);
+            op.mText.append(text);
+            mPendingOps.add(op);
+        }
+    }
+
+    /**
+     * Backspace. Cancels not yet sent character, if any.
+     */
+    @Override
+    public void deleteBeforeCursor(int length) {
+        mMirror.onDeleteSurroundingText(length, 0);
+        Op last = getLastOp();
+
+        while (length > 0 && last != null && last.mType == OP_COMMIT_TEXT && last.mText.length() > 0) {
+            last.mText.setLength(last.mText.length() - 1);
+            length--;
+        }
+
+        if (last != null && last.mType == OP_COMMIT_TEXT && last.mText.length() == 0) {
+            mPendingOps.remove(mPendingOps.size() - 1);
+            last = getLastOp();
+        }
+
+        if (length == 0) {
+            return;
+        }
+
+        if (last != null && last.mType == OP_DELETE_SURROUNDING_TEXT && last.mArg2 == 0) {
+            last.mArg1 += length;
+        } else {
+            addDeleteOp(length, 0);
+        }
+    }
+
+    @Override
+    public void deleteSurroundingText(int beforeLength, int afterLength) {
+        mMirror.onDeleteSurroundingText(beforeLength, afterLength);
+        mEntryCoalescible &= afterLength == 0;
+        addDeleteOp(beforeLength, afterLength);
+    }
+
+    /**
+     * Cursor move. Replaces not yet sent move, if any (e.g. when cursor key is held).
+     */
+    @Override
+    public void setSelection(int start, int end) {
+        mMirror.onSetSelection(start, end);
+        Op op = getLastOp();
+
+        if (op == null || op.mType != OP_SET_SELECTION) {
+            op = new Op(OP_SET_SELECTION);
+            mPendingOps.add(op);
+        }
+
+        op.mArg1 = start;
+        op.mArg2 = end;
+    }
+
+    @Override
+    public boolean isBusy() {
+        return !mPendingOps.isEmpty() || !mDispatcher.isIdle();
+    }
+
+    @Override
+    public void fetchLater(EditorDispatcher.Task task) {
+        flush(true);
+
+        InputConnection connection = mService.getCurrentInputConnection();
+
+        // counted by the mirror
+        if (connection != null) {
+            mDispatcher.post(connection, task, true);
+        }
+    }
+
+    /**
+     * Compute edits from the local copy of the text if it's synced.<br/>
+     * Otherwise text is read and edits are sent on the dispatcher thread after pending edits, so they're never
+     * computed from the stale text.
+     */
+    void edit(EditorText.Edit edit) {
+        if (mMirror.trySync()) {
+            edit.run(mMirror, this);
+            return;
+        }
+
+        mMirror.onUnknownEdit();
+        perform(c -> {
+            EditorText.Editor editor = new ConnectionEditor(c);
+            c.beginBatchEdit();
+            edit.run(EditorTextMirror.read(c), editor);
+            c.endBatchEdit();
+        });
+    }
+
+    /**
+     * Run other editor operation (e.g. editor action) after pending edits
+     */
+    void perform(EditorDispatcher.Task task) {
+        flush(true);
+
+        InputConnection connection = mService.getCurrentInputConnection();
+
+        if (connection != null) {
+            mDispatcher.post(connection, task, true);
+            mIpcCount++;
+        }
+    }
+
+    /**
+     * Send pending edits now. Call before sending anything else to the editor.
+     * @param force send even if the editor falls behind
+     * @return false if edits are postponed because the editor falls behind
+     */
+    boolean flush(boolean force) {
+        mHandler.removeCallbacks(mFlushTask);
+        mFlushScheduled = false;
+
+        if (mPendingOps.isEmpty()) {
+            return true;
+        }
+
+        InputConnection connection = mService.getCurrentInputConnection();
+
+        if (connection == null) {
+            mPendingOps.clear();
+            return true;
+        }
+
+        final List<Op> ops = new ArrayList<>(mPendingOps);
+
+        if (!mDispatcher.post(connection, c -> send(c, ops), force)) {
+            scheduleFlush();
+            return false;
+        }
+
+        mIpcCount += ops.size() > 1 ? ops.size() + 2 : 1;
+        mPendingOps.clear();
+        return true;
+    }
+
+    /**
+     * Runs on the dispatcher thread
+     */
+    private static void send(InputConnection connection, List<Op> ops) {
+        boolean batch = ops.size() > 1;
+
+        if (batch) {
+            connection.beginBatchEdit();
+        }
+
+        for (Op op : ops) {
+            switch (op.mType) {
+                case OP_COMMIT_TEXT:
+                    connection.commitText(op.mText, 1);
+                    break;
+                case OP_DELETE_SURROUNDING_TEXT:
+                    connection.deleteSurroundingText(op.mArg1, op.mArg2);
+                    break;
+                case OP_SET_SELECTION:
+                    connection.setSelection(op.mArg1, op.mArg2);
+                    break;
+            }
+        }
+
+        if (batch) {
+            connection.endBatchEdit();
+        }
+    }
+
+    /**
+     * Drop pending edits (e.g. input connection has been changed)
+     */
+    void reset() {
+        mHandler.removeCallbacks(mFlushTask);
+        mFlushScheduled = false;
+        mPendingOps.clear();
+        mLastEntryTimeMs = 0;
+    }
+
+    /**
+     * Calls to the editor (including text fetched by the mirror) per entry
+     */
+    float getIpcPerEntry() {
+        return mEntryCount == 0 ? 0 : (float) (mIpcCount + mMirror.getSyncCount()) / mEntryCount;
+    }
+
+    void logStats() {
+        if (mEntryCount > 0) {
+            Log.d(TAG, "Editor IPC per keystroke: " + getIpcPerEntry() + ", keystrokes: " + mEntryCount);
+        }
+    }
+
+    private void addDeleteOp(int beforeLength, int afterLength) {
+        Op op = new Op(OP_DELETE_SURROUNDING_TEXT);
+        op.mArg1 = beforeLength;
+        op.mArg2 = afterLength;
+        mPendingOps.add(op);
+    }
+
+    private void scheduleFlush() {
+        if (!mPendingOps.isEmpty() && !mFlushScheduled) {
+            mHandler.postDelayed(mFlushTask, FLUSH_DELAY_MS);
+            mFlushScheduled = true;
+        }
+    }
+
+    private Op getLastOp() {
+        return mPendingOps.isEmpty() ? null : mPendingOps.get(mPendingOps.size() - 1);
+    }
+
+    private void onDelayedFlush() {
+        if (flush(false) && mOnDelayedFlush != null) {
+            mOnDelayedFlush.run();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.view.inputmethod.InputConnection;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs editor operations on the dedicated thread in the order they were posted,
+ * so slow client app doesn't block keyboard's ui thread.<br/>
+ * Queue is bounded: when client app falls behind, {@link #post} refuses new tasks
+ * and {@link BackpressureListener} is notified (on the main thread).
+ */
+class EditorDispatcher {
+    private static final String TAG = EditorDispatcher.class.getSimpleName();
+    private static final int MAX_PENDING_TASKS = 8;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger mPendingTasks = new AtomicInteger();
+    private BackpressureListener mListener;
+    private boolean mCongested;
+
+    interface Task {
+        void run(InputConnection connection);
+    }
+
+    interface BackpressureListener {
+        /**
+         * @param congested true when queue is full, false when it has been drained
+         */
+        void onBackpressure(boolean congested);
+    }
+
+    EditorDispatcher() {
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DEFAULT);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    void setBackpressureListener(BackpressureListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Call from the main thread
+     * @param connection connection at the moment of posting (task isn't applied to the next editor)
+     * @param force post even if queue is full (task that can't be postponed)
+     * @return false if queue is full, so task should be retried later
+     */
+    boolean post(InputConnection connection, Task task, boolean force) {
+        if (!force && mPendingTasks.get() >= MAX_PENDING_TASKS) {
+            setCongested(true);
+            return false;
+        }
+
+        mPendingTasks.incrementAndGet();
+
+        mHandler.post(() -> {
+            try {
+                task.run(connection);
+            } finally {
+                if (mPendingTasks.decrementAndGet() == 0) {
+                    mMainHandler.post(() -> setCongested(false));
+                }
+            }
+        });
+
+        return true;
+    }
+
+    boolean isCongested() {
+        return mCongested;
+    }
+
+    /**
+     * @return true if all posted tasks are done, so editor's state could be read right away
+     */
+    boolean isIdle() {
+        return mPendingTasks.get() == 0;
+    }
+
+    /**
+     * Posted tasks are done before quitting
+     */
+    void quit() {
+        mHandler.post(mThread::quit);
+    }
+
+    private void setCongested(boolean congested) {
+        if (mCongested == congested || (!congested && mPendingTasks.get() > 0)) {
+            return;
+        }
+
+        mCongested = congested;
+        Log.d(TAG, congested ? "Editor falls behind. Input is coalesced." : "Editor has caught up");
+
+        if (mListener != null) {
+            mListener.onBackpressure(congested);
+        }
+    }
+}
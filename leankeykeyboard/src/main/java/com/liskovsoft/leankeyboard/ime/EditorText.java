@@ -0,0 +1,44 @@
+package com.liskovsoft.leankeyboard.ime;
+
+/**
+ * Editor's text around the cursor (see {@link EditorTextMirror})
+ */
+interface EditorText {
+    /**
+     * NOTE: selected text is included
+     */
+    String getText();
+
+    CharSequence getTextBeforeCursor();
+
+    CharSequence getTextAfterCursor();
+
+    int getLengthBeforeCursor();
+
+    int getLengthAfterCursor();
+
+    /**
+     * Cursor position after LEFT/RIGHT key (bidi aware)
+     */
+    int getNextCursorPosition(boolean left);
+
+    /**
+     * Sends edits to the editor
+     */
+    interface Editor {
+        void commitText(CharSequence text);
+
+        void deleteBeforeCursor(int length);
+
+        void deleteSurroundingText(int beforeLength, int afterLength);
+
+        void setSelection(int start, int end);
+    }
+
+    /**
+     * Edits that are computed from the editor's text
+     */
+    interface Edit {
+        void run(EditorText text, Editor editor);
+    }
+}
@@ -0,0 +1,588 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.InputMethodService;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputConnection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local copy of the editor's text and selection, so reading them doesn't involve IPC on every keystroke.<br/>
+ * Own edits are applied locally and confirmed later by {@link InputMethodService#onUpdateSelection}.<br/>
+ * Any unexpected change (app rewrote the text, user moved the cursor etc) marks the copy as stale,
+ * so it's fetched again on the next read.<br/>
+ * NOTE: While own edits are on the way to the editor, text is fetched on the editor thread after them
+ * and delivered back later (edits made in the meantime are applied on top of it).
+ * Until then the copy isn't synced: check {@link #trySync()} before computing edits from it
+ * and use {@link #setOnSyncListener} to update things that only display the text.
+ */
+class EditorTextMirror implements EditorText {
+    private static final String TAG = EditorTextMirror.class.getSimpleName();
+    private static final int MAX_TEXT_LENGTH = 1000;
+    /**
+     * Pending own edits. More than that means editor doesn't report selection at all.
+     */
+    private static final int MAX_PENDING_EDITS = 64;
+    private static final int UNKNOWN = -1;
+    private static final int EDIT_COMMIT_TEXT = 0;
+    private static final int EDIT_DELETE_SURROUNDING_TEXT = 1;
+    private static final int EDIT_SET_SELECTION = 2;
+    private final InputMethodService mService;
+    private final StringBuilder mText = new StringBuilder();
+    private final BidiCursorEngine mCursorEngine = new BidiCursorEngine(mText);
+    /**
+     * Expected selections after own edits (start, end pairs), oldest first
+     */
+    private final ArrayDeque<int[]> mPendingSelections = new ArrayDeque<>();
+    /**
+     * Own edits made while text is being fetched. They reach the editor after the fetch, so they're applied on top of it.
+     */
+    private final List<Edit> mEditsAfterFetch = new ArrayList<>();
+    private final ExtractedTextRequest mRequest = new ExtractedTextRequest();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Fetcher mFetcher;
+    private Runnable mOnSyncListener;
+    private int mSelStart;
+    private int mSelEnd;
+    /**
+     * Position of the mirrored text within the editor's text.<br/>
+     * {@link #UNKNOWN} when only the text around the cursor is read (long text, editor doesn't support extracting).
+     * Such copy is fine for the text and lengths around the cursor, only absolute positions aren't known
+     * till the editor reports selection of own edit (see {@link #onUpdateSelection}).
+     */
+    private int mOffset;
+    private boolean mSynced;
+    private boolean mFetchPending;
+    /**
+     * Fetched text is dropped if generation has been changed in the meantime
+     */
+    private int mFetchGeneration;
+    private int mSyncCount;
+
+    interface Fetcher {
+        /**
+         * @return true if own edits haven't reached the editor yet, so its text can't be read right now
+         */
+        boolean isBusy();
+
+        /**
+         * Run task on the editor thread after pending edits
+         */
+        void fetchLater(EditorDispatcher.Task task);
+    }
+
+    private static final class Edit {
+        private final int mType;
+        private final String mText;
+        private final int mArg1;
+        private final int mArg2;
+
+        private Edit(int type, String text, int arg1, int arg2) {
+            mType = type;
+            mText = text;
+            mArg1 = arg1;
+            mArg2 = arg2;
+        }
+    }
+
+    /**
+     * Text read from the editor at once
+     */
+    private static final class Snapshot implements EditorText {
+        private final StringBuilder mText = new StringBuilder();
+        private int mSelStart;
+        private int mSelEnd;
+        private int mOffset;
+
+        @Override
+        public String getText() {
+            return mText.toString();
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor() {
+            return mText.subSequence(0, mSelStart);
+        }
+
+        @Override
+        public CharSequence getTextAfterCursor() {
+            return mText.subSequence(mSelEnd, mText.length());
+        }
+
+        @Override
+        public int getLengthBeforeCursor() {
+            return mSelStart;
+        }
+
+        @Override
+        public int getLengthAfterCursor() {
+            return mText.length() - mSelEnd;
+        }
+
+        @Override
+        public int getNextCursorPosition(boolean left) {
+            BidiCursorEngine engine = new BidiCursorEngine(mText);
+            engine.reset();
+            int position = engine.getNextPosition(mSelStart, mText.length() - mSelEnd, left);
+            return mOffset == UNKNOWN ? position : mOffset + position;
+        }
+    }
+
+    EditorTextMirror(InputMethodService service) {
+        mService = service;
+        mRequest.hintMaxChars = MAX_TEXT_LENGTH;
+    }
+
+    /**
+     * @param fetcher reads the text when own edits are on the way to the editor
+     */
+    void setFetcher(Fetcher fetcher) {
+        mFetcher = fetcher;
+    }
+
+    /**
+     * @param listener invoked when fetched text is delivered
+     */
+    void setOnSyncListener(Runnable listener) {
+        mOnSyncListener = listener;
+    }
+
+    /**
+     * Call on new input field
+     */
+    void reset() {
+        invalidate();
+        dropFetch();
+        clear();
+        mRequest.token++;
+    }
+
+    void invalidate() {
+        mSynced = false;
+        mPendingSelections.clear();
+    }
+
+    /**
+     * Fetches the text if needed
+     * @return false if text is being fetched, so the copy can't be used to compute edits
+     */
+    boolean trySync() {
+        sync();
+        return mSynced;
+    }
+
+    /**
+     * Own edit that can't be mirrored (e.g. computed on the editor thread). Call before the edit is sent.
+     */
+    void onUnknownEdit() {
+        invalidate();
+        dropFetch();
+    }
+
+    @Override
+    public String getText() {
+        sync();
+        return mText.toString();
+    }
+
+    @Override
+    public CharSequence getTextBeforeCursor() {
+        sync();
+        return mText.subSequence(0, mSelStart);
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor() {
+        sync();
+        return mText.subSequence(mSelEnd, mText.length());
+    }
+
+    @Override
+    public int getLengthBeforeCursor() {
+        sync();
+        return mSelStart;
+    }
+
+    @Override
+    public int getLengthAfterCursor() {
+        sync();
+        return mText.length() - mSelEnd;
+    }
+
+    @Override
+    public int getNextCursorPosition(boolean left) {
+        sync();
+        int position = mCursorEngine.getNextPosition(mSelStart, mText.length() - mSelEnd, left);
+
+        if (mOffset == UNKNOWN) {
+            resolveOffset();
+        }
+
+        return mOffset == UNKNOWN ? position : mOffset + position;
+    }
+
+    /**
+     * Number of times text was fetched from the editor
+     */
+    int getSyncCount() {
+        return mSyncCount;
+    }
+
+    /**
+     * Mirror of {@link InputConnection#commitText} (cursor is placed after the text)
+     */
+    void onCommitText(CharSequence text) {
+        if (!mSynced) {
+            addEditAfterFetch(EDIT_COMMIT_TEXT, text.toString(), 0, 0);
+            return;
+        }
+
+        mText.replace(mSelStart, mSelEnd, text.toString());
+        mCursorEngine.onReplace(mSelStart, mSelEnd - mSelStart, text.length());
+        mSelStart += text.length();
+        mSelEnd = mSelStart;
+        expectSelection();
+    }
+
+    /**
+     * Mirror of {@link InputConnection#deleteSurroundingText}
+     */
+    void onDeleteSurroundingText(int beforeLength, int afterLength) {
+        if (!mSynced) {
+            addEditAfterFetch(EDIT_DELETE_SURROUNDING_TEXT, null, beforeLength, afterLength);
+            return;
+        }
+
+        int after = Math.min(afterLength, mText.length() - mSelEnd);
+        mText.delete(mSelEnd, mSelEnd + after);
+        mCursorEngine.onReplace(mSelEnd, after, 0);
+
+        int before = Math.min(beforeLength, mSelStart);
+        mText.delete(mSelStart - before, mSelStart);
+        mCursorEngine.onReplace(mSelStart - before, before, 0);
+        mSelStart -= before;
+        mSelEnd -= before;
+        expectSelection();
+    }
+
+    /**
+     * Mirror of {@link InputConnection#setSelection}
+     */
+    void onSetSelection(int start, int end) {
+        if (!mSynced) {
+            addEditAfterFetch(EDIT_SET_SELECTION, null, start, end);
+            return;
+        }
+
+        if (mOffset == UNKNOWN) {
+            resolveOffset();
+        }
+
+        if (mOffset == UNKNOWN) {
+            // can't map absolute positions
+            invalidate();
+            return;
+        }
+
+        start -= mOffset;
+        end -= mOffset;
+
+        if (start < 0 || end < start || end > mText.length()) {
+            invalidate();
+            return;
+        }
+
+        mSelStart = start;
+        mSelEnd = end;
+        expectSelection();
+    }
+
+    /**
+     * Selection reported by the editor. Confirms own edits or detects outside changes.
+     */
+    void onUpdateSelection(int newSelStart, int newSelEnd) {
+        if (!mSynced) {
+            return;
+        }
+
+        if (mOffset == UNKNOWN) {
+            int[] expected = mPendingSelections.peekLast();
+
+            if (expected == null || newSelEnd - newSelStart != expected[1] - expected[0]) {
+                Log.d(TAG, "Editor has been changed outside of the keyboard. Resync is needed.");
+                invalidate();
+                return;
+            }
+
+            // editor reports the latest own edit, so absolute positions are known now
+            mOffset = newSelStart - expected[0];
+        }
+
+        int start = newSelStart - mOffset;
+        int end = newSelEnd - mOffset;
+
+        // editor may report only the last of several edits (e.g. batch edit)
+        while (!mPendingSelections.isEmpty()) {
+            int[] expected = mPendingSelections.poll();
+
+            if (expected[0] == start && expected[1] == end) {
+                return;
+            }
+        }
+
+        if (start != mSelStart || end != mSelEnd) {
+            Log.d(TAG, "Editor has been changed outside of the keyboard. Resync is needed.");
+            invalidate();
+        }
+    }
+
+    /**
+     * Text reported by the editor (only when it supports extracting)
+     */
+    void onUpdateExtractedText(int token, ExtractedText text) {
+        if (!mSynced || mOffset == UNKNOWN || token != mRequest.token || text == null || text.text == null) {
+            return;
+        }
+
+        if (text.partialStartOffset < 0) {
+            apply(fromExtracted(text));
+            return;
+        }
+
+        // partial change while own edits are in flight is most likely an echo of them
+        if (!mPendingSelections.isEmpty()) {
+            return;
+        }
+
+        int start = text.partialStartOffset - mOffset;
+        int end = start + text.text.length();
+
+        if (start < 0 || end > mText.length() || !mText.substring(start, end).equals(text.text.toString())) {
+            Log.d(TAG, "Editor text differs from the local copy. Resync is needed.");
+            invalidate();
+        }
+    }
+
+    /**
+     * Read text on the editor thread (e.g. to compute edits while the copy isn't synced)
+     */
+    static EditorText read(InputConnection connection) {
+        ExtractedTextRequest request = new ExtractedTextRequest();
+        request.hintMaxChars = MAX_TEXT_LENGTH;
+        // without monitor flag: the copy keeps its own monitor request
+        return read(connection, request, 0);
+    }
+
+    private void expectSelection() {
+        if (mPendingSelections.size() >= MAX_PENDING_EDITS) {
+            mPendingSelections.poll();
+        }
+
+        mPendingSelections.add(new int[] {mSelStart, mSelEnd});
+    }
+
+    /**
+     * Absolute positions of the copy that is read around the cursor
+     */
+    private void resolveOffset() {
+        InputConnection connection = mService.getCurrentInputConnection();
+
+        if (connection == null) {
+            return;
+        }
+
+        // only selection is needed
+        ExtractedTextRequest request = new ExtractedTextRequest();
+        request.hintMaxChars = 0;
+        ExtractedText extracted = connection.getExtractedText(request, 0);
+
+        if (extracted != null) {
+            mOffset = extracted.startOffset + Math.min(extracted.selectionStart, extracted.selectionEnd) - mSelStart;
+        }
+    }
+
+    private void addEditAfterFetch(int type, String text, int arg1, int arg2) {
+        if (!mFetchPending) {
+            return; // next fetch is sent after this edit
+        }
+
+        if (mEditsAfterFetch.size() >= MAX_PENDING_EDITS) {
+            dropFetch();
+            return;
+        }
+
+        mEditsAfterFetch.add(new Edit(type, text, arg1, arg2));
+    }
+
+    private void sync() {
+        if (mSynced) {
+            return;
+        }
+
+        InputConnection connection = mService.getCurrentInputConnection();
+
+        if (connection == null) {
+            clear();
+            return;
+        }
+
+        if (mFetcher != null && mFetcher.isBusy()) {
+            fetchLater();
+            return;
+        }
+
+        dropFetch();
+        mSyncCount++;
+        apply(read(connection, createRequest(), InputConnection.GET_EXTRACTED_TEXT_MONITOR));
+    }
+
+    /**
+     * Fetch text on the editor thread, so the ui isn't blocked while the editor applies own edits
+     */
+    private void fetchLater() {
+        if (mFetchPending) {
+            return;
+        }
+
+        mFetchPending = true;
+        mSyncCount++;
+        final int generation = mFetchGeneration;
+        final ExtractedTextRequest request = createRequest();
+
+        mFetcher.fetchLater(connection -> {
+            Snapshot snapshot = read(connection, request, InputConnection.GET_EXTRACTED_TEXT_MONITOR);
+
+            mHandler.post(() -> onFetched(generation, snapshot));
+        });
+    }
+
+    private void onFetched(int generation, Snapshot snapshot) {
+        if (generation != mFetchGeneration) {
+            return; // outdated
+        }
+
+        List<Edit> edits = new ArrayList<>(mEditsAfterFetch);
+        mFetchPending = false;
+        mEditsAfterFetch.clear();
+        apply(snapshot);
+
+        for (Edit edit : edits) {
+            switch (edit.mType) {
+                case EDIT_COMMIT_TEXT:
+                    onCommitText(edit.mText);
+                    break;
+                case EDIT_DELETE_SURROUNDING_TEXT:
+                    onDeleteSurroundingText(edit.mArg1, edit.mArg2);
+                    break;
+                case EDIT_SET_SELECTION:
+                    onSetSelection(edit.mArg1, edit.mArg2);
+                    break;
+            }
+        }
+
+        if (mOnSyncListener != null) {
+            mOnSyncListener.run();
+        }
+    }
+
+    /**
+     * Fetched text won't match the editor (e.g. new input field or edit that can't be applied on top of it)
+     */
+    private void dropFetch() {
+        if (mFetchPending) {
+            mFetchPending = false;
+            mFetchGeneration++;
+        }
+
+        mEditsAfterFetch.clear();
+    }
+
+    private void clear() {
+        mText.setLength(0);
+        mSelStart = mSelEnd = mOffset = 0;
+        mPendingSelections.clear();
+        mCursorEngine.reset();
+    }
+
+    private ExtractedTextRequest createRequest() {
+        // request could be used on the editor thread
+        ExtractedTextRequest request = new ExtractedTextRequest();
+        request.token = mRequest.token;
+        request.hintMaxChars = mRequest.hintMaxChars;
+        return request;
+    }
+
+    private void apply(Snapshot snapshot) {
+        mText.setLength(0);
+        mText.append(snapshot.mText);
+        mOffset = snapshot.mOffset;
+        mSelStart = clamp(snapshot.mSelStart);
+        mSelEnd = clamp(snapshot.mSelEnd);
+        mPendingSelections.clear();
+        mCursorEngine.reset();
+        mSynced = true;
+    }
+
+    /**
+     * NOTE: Could be called on the editor thread
+     */
+    private static Snapshot read(InputConnection connection, ExtractedTextRequest request, int flags) {
+        ExtractedText extracted = connection.getExtractedText(request, flags);
+
+        if (extracted != null && extracted.text != null) {
+            return fromExtracted(extracted);
+        }
+
+        return readAroundCursor(connection);
+    }
+
+    private static Snapshot fromExtracted(ExtractedText extracted) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.mText.append(extracted.text);
+        snapshot.mOffset = extracted.startOffset;
+        snapshot.mSelStart = Math.min(extracted.selectionStart, extracted.selectionEnd);
+        snapshot.mSelEnd = Math.max(extracted.selectionStart, extracted.selectionEnd);
+        return snapshot;
+    }
+
+    /**
+     * Fallback for editors that don't support extracting
+     */
+    private static Snapshot readAroundCursor(InputConnection connection) {
+        Snapshot snapshot = new Snapshot();
+        CharSequence before = connection.getTextBeforeCursor(MAX_TEXT_LENGTH, 0);
+        CharSequence selected = connection.getSelectedText(0);
+        CharSequence after = connection.getTextAfterCursor(MAX_TEXT_LENGTH, 0);
+
+        if (before != null) {
+            snapshot.mText.append(before);
+        }
+
+        snapshot.mSelStart = snapshot.mText.length();
+
+        if (selected != null) {
+            snapshot.mText.append(selected);
+        }
+
+        snapshot.mSelEnd = snapshot.mText.length();
+
+        if (after != null) {
+            snapshot.mText.append(after);
+        }
+
+        // text is truncated, so positions within the editor are unknown
+        snapshot.mOffset = before != null && before.length() >= MAX_TEXT_LENGTH ? UNKNOWN : 0;
+
+        return snapshot;
+    }
+
+    private int clamp(int position) {
+        return Math.max(0, Math.min(position, mText.length()));
+    }
+}
@@ -0,0 +1,174 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+
+/**
+ * Bounded cache of rendered key bitmaps.<br/>
+ * Lets {@link LeanbackKeyboardView} reuse bitmaps when the same keys are rendered again (shift toggle, layout switch).
+ */
+class KeyBitmapCache {
+    private final LruCache<RenderKey, Bitmap> mCache;
+    private final RenderKey mLookupKey = new RenderKey();
+
+    /**
+     * @param maxSizeBytes max total size of the cached bitmaps
+     */
+    KeyBitmapCache(int maxSizeBytes) {
+        mCache = new LruCache<RenderKey, Bitmap>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(RenderKey key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Reusable key that used for lookups. Don't store it anywhere.
+     */
+    RenderKey lookupKey() {
+        return mLookupKey;
+    }
+
+    Bitmap get(RenderKey key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * NOTE: supplied key is copied, so {@link #lookupKey()} could be passed here
+     */
+    void put(RenderKey key, Bitmap bitmap) {
+        mCache.put(key.copy(), bitmap);
+    }
+
+    void clear() {
+        mCache.evictAll();
+    }
+
+    int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    int getMissCount() {
+        return mCache.missCount();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mCache.toString();
+    }
+
+    /**
+     * Icon identity that doesn't depend on the drawable instance.<br/>
+     * Drawables loaded from the same resource (and their copies) share the constant state.
+     */
+    static Object getIconId(Drawable icon) {
+        if (icon == null) {
+            return null;
+        }
+
+        Drawable.ConstantState state = icon.getConstantState();
+
+        return state != null ? state : icon;
+    }
+
+    /**
+     * Everything that is drawn on the key<br/>
+     * NOTE: text color isn't here because text keys are stored as alpha masks.
+     * Shift state isn't here too: it's already applied to the label and icon.
+     */
+    static class RenderKey {
+        CharSequence label;
+        /**
+         * See {@link #getIconId(Drawable)}
+         */
+        Object iconId;
+        int width;
+        int height;
+        float textSize;
+        Typeface typeface;
+
+        RenderKey copy() {
+            RenderKey key = new RenderKey();
+            key.label = label != null ? label.toString() : null;
+            key.iconId = iconId;
+            key.width = width;
+            key.height = height;
+            key.textSize = textSize;
+            key.typeface = typeface;
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof RenderKey)) {
+                return false;
+            }
+
+            RenderKey key = (RenderKey) obj;
+
+            return width == key.width &&
+                   height == key.height &&
+                   textSize == key.textSize &&
+                   iconId == key.iconId &&
+                   typeface == key.typeface &&
+                   contentEquals(label, key.label);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = width;
+            hash = hash * 31 + height;
+            hash = hash * 31 + Float.floatToIntBits(textSize);
+            hash = hash * 31 + System.identityHashCode(iconId);
+            hash = hash * 31 + System.identityHashCode(typeface);
+            hash = hash * 31 + contentHash(label);
+            return hash;
+        }
+
+        private static boolean contentEquals(CharSequence first, CharSequence second) {
+            if (first == null || second == null) {
+                return first == second;
+            }
+
+            int length = first.length();
+
+            if (length != second.length()) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (first.charAt(i) != second.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Same as {@link String#hashCode()} but for any char sequence
+         */
+        private static int contentHash(CharSequence text) {
+            if (text == null) {
+                return 0;
+            }
+
+            int hash = 0;
+
+            for (int i = 0; i < text.length(); i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.liskovsoft.leankeyboard.ime;
+
+/**
+ * Speeds up held keys: the longer key is held, the more steps are made per repeat event.<br/>
+ * Each kind of key (navigation, cursor, delete) has its own {@link Curve}.
+ */
+class KeyRepeatAccelerator {
+    /**
+     * D-pad: keys to move per repeat
+     */
+    static final Curve NAVIGATION_CURVE = new Curve(new long[] {0, 1000, 2000}, new int[] {1, 2, 3});
+    /**
+     * L1/R1: chars to move per repeat
+     */
+    static final Curve CURSOR_CURVE = new Curve(new long[] {0, 1000, 2000}, new int[] {1, 2, 4});
+    /**
+     * Delete: chars to delete per repeat
+     */
+    static final Curve DELETE_CURVE = new Curve(new long[] {0, 1000}, new int[] {1, 2});
+    /**
+     * Delete: words to delete per repeat (none at first, then delete is switched to words)
+     */
+    static final Curve DELETE_WORD_CURVE = new Curve(new long[] {2000, 4000}, new int[] {1, 2});
+    private final Curve mNavigationCurve;
+    private final Curve mCursorCurve;
+    private final Curve mDeleteCurve;
+    private final Curve mDeleteWordCurve;
+
+    /**
+     * Steps per repeat event by hold time
+     */
+    static final class Curve {
+        private final long[] mHoldTimesMs;
+        private final int[] mSteps;
+
+        /**
+         * @param holdTimesMs ascending hold times from which steps are applied
+         * @param steps steps for each hold time
+         */
+        Curve(long[] holdTimesMs, int[] steps) {
+            if (holdTimesMs.length != steps.length) {
+                throw new IllegalArgumentException("Each hold time should have its steps");
+            }
+
+            for (int i = 1; i < holdTimesMs.length; i++) {
+                if (holdTimesMs[i] <= holdTimesMs[i - 1]) {
+                    throw new IllegalArgumentException("Hold times should be ascending");
+                }
+            }
+
+            mHoldTimesMs = holdTimesMs;
+            mSteps = steps;
+        }
+
+        /**
+         * @return steps for the hold time or 0 if key isn't held long enough
+         */
+        int getSteps(long holdTimeMs) {
+            for (int i = mHoldTimesMs.length - 1; i >= 0; i--) {
+                if (holdTimeMs >= mHoldTimesMs[i]) {
+                    return mSteps[i];
+                }
+            }
+
+            return 0;
+        }
+    }
+
+    KeyRepeatAccelerator() {
+        this(NAVIGATION_CURVE, CURSOR_CURVE, DELETE_CURVE, DELETE_WORD_CURVE);
+    }
+
+    KeyRepeatAccelerator(Curve navigationCurve, Curve cursorCurve, Curve deleteCurve, Curve deleteWordCurve) {
+        mNavigationCurve = navigationCurve;
+        mCursorCurve = cursorCurve;
+        mDeleteCurve = deleteCurve;
+        mDeleteWordCurve = deleteWordCurve;
+    }
+
+    int getNavigationSteps(long holdTimeMs) {
+        return Math.max(1, mNavigationCurve.getSteps(holdTimeMs));
+    }
+
+    int getCursorSteps(long holdTimeMs) {
+        return Math.max(1, mCursorCurve.getSteps(holdTimeMs));
+    }
+
+    int getDeleteSteps(long holdTimeMs) {
+        return Math.max(1, mDeleteCurve.getSteps(holdTimeMs));
+    }
+
+    /**
+     * @return 0 if chars should be deleted
+     */
+    int getDeleteWordSteps(long holdTimeMs) {
+        return mDeleteWordCurve.getSteps(holdTimeMs);
+    }
+}
@@ -0,0 +1,87 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextUtils;
+
+/**
+ * Text styles of the keys prepared once per layout/theme.<br/>
+ * Key render loop just picks style by the flags so no typeface lookup or text measuring is needed.
+ */
+class KeyTextStyles {
+    /**
+     * Label is longer than one char (e.g. "?123")
+     */
+    static final int FLAG_MODE_CHANGE = 1;
+    /**
+     * Label should be shifted left
+     */
+    static final int FLAG_DIGIT = 1 << 1;
+    /**
+     * Label should be shifted left and up
+     */
+    static final int FLAG_LOWER_CASE = 1 << 2;
+    private final Style mKeyStyle;
+    private final Style mModeChangeStyle;
+
+    static class Style {
+        final Typeface typeface;
+        float textSize;
+        /**
+         * Offset from the vertical center of the key to the text baseline
+         */
+        float baseline;
+
+        Style(Typeface typeface) {
+            this.typeface = typeface;
+        }
+    }
+
+    KeyTextStyles() {
+        mKeyStyle = new Style(Typeface.create("sans-serif-light", Typeface.NORMAL));
+        mModeChangeStyle = new Style(Typeface.create("sans-serif", Typeface.NORMAL));
+    }
+
+    /**
+     * NOTE: Measures baselines, so should be called when text size changes
+     */
+    void prepare(Paint paint, float keyTextSize, float modeChangeTextSize) {
+        prepare(paint, mKeyStyle, keyTextSize);
+        prepare(paint, mModeChangeStyle, modeChangeTextSize);
+    }
+
+    private static void prepare(Paint paint, Style style, float textSize) {
+        style.textSize = textSize;
+        paint.setTypeface(style.typeface);
+        paint.setTextSize(textSize);
+        style.baseline = (paint.getTextSize() - paint.descent()) / 2.0F;
+    }
+
+    Style get(int flags) {
+        return (flags & FLAG_MODE_CHANGE) != 0 ? mModeChangeStyle : mKeyStyle;
+    }
+
+    /**
+     * NOTE: Should be called once per label (allocates temp strings)
+     */
+    static int computeFlags(CharSequence label) {
+        if (label == null) {
+            return 0;
+        }
+
+        int flags = 0;
+        String text = label.toString();
+
+        if (text.length() > 1) {
+            flags |= FLAG_MODE_CHANGE;
+        }
+
+        if (TextUtils.isDigitsOnly(text)) {
+            flags |= FLAG_DIGIT;
+        } else if (!text.toUpperCase().equals(text)) {
+            flags |= FLAG_LOWER_CASE;
+        }
+
+        return flags;
+    }
+}
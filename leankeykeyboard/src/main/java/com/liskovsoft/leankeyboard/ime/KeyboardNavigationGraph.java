@@ -0,0 +1,140 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+
+import java.util.List;
+
+/**
+ * D-pad navigation between keys of one layout.<br/>
+ * Built once per keyboard, so directional move is just a table lookup.<br/>
+ * Doesn't depend on views, so navigation could be checked in unit tests.
+ */
+class KeyboardNavigationGraph {
+    /**
+     * Focus stays on the same key
+     */
+    static final int TARGET_NONE = -1;
+    /**
+     * Focus goes to the action (enter) button
+     */
+    static final int TARGET_ACTION = -2;
+    /**
+     * Focus leaves keyboard to the top (suggestions row or escape)
+     */
+    static final int TARGET_NORTH = -3;
+    private static final int DIRECTIONS_COUNT = 4;
+    private static final int INDEX_LEFT = 0;
+    private static final int INDEX_RIGHT = 1;
+    private static final int INDEX_UP = 2;
+    private static final int INDEX_DOWN = 3;
+    private final int[] mNext;
+    private final int[] mWrap;
+
+    /**
+     * All arrays are indexed by key index, coordinates are relative to the keyboard
+     * @param index spatial index built from the same keys
+     * @param stepMultiplier vertical step in key heights (see {@link LeanbackKeyboardContainer#DIRECTION_STEP_MULTIPLIER})
+     */
+    KeyboardNavigationGraph(int[] xs, int[] ys, int[] widths, int[] heights, int[] edgeFlags, KeyboardSpatialIndex index, double stepMultiplier) {
+        int size = xs.length;
+        mNext = new int[size * DIRECTIONS_COUNT];
+        mWrap = new int[size * DIRECTIONS_COUNT];
+
+        for (int i = 0; i < size; i++) {
+            float centerX = xs[i] + widths[i] / 2.0F;
+            float centerY = ys[i] + heights[i] / 2.0F;
+            float delta = heights[i] / 2.0F;
+            float stepY = (float) (heights[i] * stepMultiplier);
+
+            float left = (edgeFlags[i] & Keyboard.EDGE_LEFT) == 0 ? xs[i] - delta : centerX;
+            put(mNext, i, INDEX_LEFT, index.find(left, centerY));
+
+            if ((edgeFlags[i] & Keyboard.EDGE_RIGHT) != 0) {
+                mNext[i * DIRECTIONS_COUNT + INDEX_RIGHT] = TARGET_ACTION;
+            } else {
+                put(mNext, i, INDEX_RIGHT, index.find(xs[i] + widths[i] + delta, centerY));
+            }
+
+            if (centerY - stepY < 0) {
+                mNext[i * DIRECTIONS_COUNT + INDEX_UP] = TARGET_NORTH;
+            } else {
+                put(mNext, i, INDEX_UP, index.find(centerX, centerY - stepY));
+            }
+
+            put(mNext, i, INDEX_DOWN, index.find(centerX, centerY + stepY));
+
+            // cyclic navigation: opposite end of the same row or column
+            put(mWrap, i, INDEX_LEFT, index.find(Integer.MAX_VALUE, ys[i]));
+            put(mWrap, i, INDEX_RIGHT, index.find(0, ys[i]));
+            put(mWrap, i, INDEX_UP, index.find(xs[i], Integer.MAX_VALUE));
+            put(mWrap, i, INDEX_DOWN, index.find(xs[i], 0));
+        }
+    }
+
+    static KeyboardNavigationGraph from(List<Key> keys, KeyboardSpatialIndex index) {
+        int size = keys.size();
+        int[] xs = new int[size];
+        int[] ys = new int[size];
+        int[] widths = new int[size];
+        int[] heights = new int[size];
+        int[] edgeFlags = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            Key key = keys.get(i);
+            xs[i] = key.x;
+            ys[i] = key.y;
+            widths[i] = key.width;
+            heights[i] = key.height;
+            edgeFlags[i] = key.edgeFlags;
+        }
+
+        return new KeyboardNavigationGraph(xs, ys, widths, heights, edgeFlags, index, LeanbackKeyboardContainer.DIRECTION_STEP_MULTIPLIER);
+    }
+
+    /**
+     * @param direction one of the LeanbackKeyboardContainer.DIRECTION_* constants
+     * @return key index or one of the TARGET_* constants
+     */
+    int getNext(int keyIndex, int direction) {
+        return get(mNext, keyIndex, direction);
+    }
+
+    /**
+     * Target for the cyclic navigation (when there is no next key in this direction)
+     * @param direction one of the LeanbackKeyboardContainer.DIRECTION_* constants
+     * @return key index or {@link #TARGET_NONE}
+     */
+    int getWrap(int keyIndex, int direction) {
+        return get(mWrap, keyIndex, direction);
+    }
+
+    private int get(int[] table, int keyIndex, int direction) {
+        int directionIndex = toIndex(direction);
+
+        if (directionIndex == -1 || keyIndex < 0 || (keyIndex * DIRECTIONS_COUNT) >= table.length) {
+            return TARGET_NONE;
+        }
+
+        return table[keyIndex * DIRECTIONS_COUNT + directionIndex];
+    }
+
+    private static void put(int[] table, int keyIndex, int directionIndex, int target) {
+        table[keyIndex * DIRECTIONS_COUNT + directionIndex] = target == keyIndex ? TARGET_NONE : target;
+    }
+
+    private static int toIndex(int direction) {
+        switch (direction) {
+            case LeanbackKeyboardContainer.DIRECTION_LEFT:
+                return INDEX_LEFT;
+            case LeanbackKeyboardContainer.DIRECTION_RIGHT:
+                return INDEX_RIGHT;
+            case LeanbackKeyboardContainer.DIRECTION_UP:
+                return INDEX_UP;
+            case LeanbackKeyboardContainer.DIRECTION_DOWN:
+                return INDEX_DOWN;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,181 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.Keyboard.Key;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps point inside keyboard to the nearest key.<br/>
+ * Built from the real key geometry, so works with any layout (variable key widths, wide space, keys that span several rows etc).<br/>
+ * Lookup takes constant time and doesn't allocate.
+ */
+class KeyboardSpatialIndex {
+    private final int[] mRowByY;
+    private final short[][] mKeyByX;
+
+    /**
+     * All arrays are indexed by key index
+     */
+    KeyboardSpatialIndex(int[] xs, int[] ys, int[] widths, int[] heights) {
+        int[] rowTops = distinct(ys);
+        int rowCount = rowTops.length;
+        int[] rowBottoms = new int[rowCount];
+        int width = 0;
+
+        for (int i = 0; i < ys.length; i++) {
+            int row = Arrays.binarySearch(rowTops, ys[i]);
+            rowBottoms[row] = Math.max(rowBottoms[row], ys[i] + heights[i]);
+            width = Math.max(width, xs[i] + widths[i]);
+        }
+
+        int height = rowCount > 0 ? rowBottoms[rowCount - 1] : 0;
+
+        // tall key shouldn't stretch its row over the next one
+        for (int row = 0; row + 1 < rowCount; row++) {
+            rowBottoms[row] = Math.min(rowBottoms[row], rowTops[row + 1]);
+        }
+
+        mRowByY = new int[Math.max(height, 1)];
+        fillNearest(mRowByY, rowTops, rowBottoms);
+
+        mKeyByX = new short[rowCount][];
+
+        for (int row = 0; row < rowCount; row++) {
+            mKeyByX[row] = buildRow(rowTops[row], xs, ys, widths, heights, Math.max(width, 1));
+        }
+    }
+
+    static KeyboardSpatialIndex from(List<Key> keys) {
+        int size = keys.size();
+        int[] xs = new int[size];
+        int[] ys = new int[size];
+        int[] widths = new int[size];
+        int[] heights = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            Key key = keys.get(i);
+            xs[i] = key.x;
+            ys[i] = key.y;
+            widths[i] = key.width;
+            heights[i] = key.height;
+        }
+
+        return new KeyboardSpatialIndex(xs, ys, widths, heights);
+    }
+
+    /**
+     * @param x relative to the keyboard left
+     * @param y relative to the keyboard top
+     * @return index of the nearest key (coordinates outside of the keyboard are clamped)
+     */
+    int find(float x, float y) {
+        if (mKeyByX.length == 0) {
+            return 0;
+        }
+
+        int row = mRowByY[clamp((int) y, mRowByY.length)];
+        short[] keys = mKeyByX[row];
+
+        return keys[clamp((int) x, keys.length)];
+    }
+
+    /**
+     * Row contains keys that start in it and taller keys from the rows above
+     */
+    private static short[] buildRow(int rowTop, int[] xs, int[] ys, int[] widths, int[] heights, int width) {
+        int count = 0;
+
+        for (int i = 0; i < ys.length; i++) {
+            if (isInRow(rowTop, ys[i], heights[i])) {
+                count++;
+            }
+        }
+
+        int[] lefts = new int[count];
+        int[] rights = new int[count];
+        int[] indexes = new int[count];
+        int pos = 0;
+
+        for (int i = 0; i < ys.length; i++) {
+            if (isInRow(rowTop, ys[i], heights[i])) {
+                lefts[pos] = xs[i];
+                rights[pos] = xs[i] + widths[i];
+                indexes[pos] = i;
+                pos++;
+            }
+        }
+
+        sortByLeft(lefts, rights, indexes);
+
+        int[] nearest = new int[width];
+        fillNearest(nearest, lefts, rights);
+
+        short[] result = new short[width];
+
+        for (int x = 0; x < width; x++) {
+            result[x] = (short) indexes[nearest[x]];
+        }
+
+        return result;
+    }
+
+    private static boolean isInRow(int rowTop, int keyTop, int keyHeight) {
+        return keyTop == rowTop || (keyTop < rowTop && keyTop + keyHeight > rowTop);
+    }
+
+    /**
+     * Fills each position with the index of the nearest segment.<br/>
+     * Gaps between segments are split in the middle.
+     */
+    private static void fillNearest(int[] result, int[] starts, int[] ends) {
+        int segment = 0;
+
+        for (int pos = 0; pos < result.length; pos++) {
+            while (segment + 1 < starts.length && pos >= (ends[segment] + starts[segment + 1]) / 2) {
+                segment++;
+            }
+
+            result[pos] = segment;
+        }
+    }
+
+    private static void sortByLeft(int[] lefts, int[] rights, int[] indexes) {
+        // insertion sort: row is short and keys are almost sorted already
+        for (int i = 1; i < lefts.length; i++) {
+            for (int j = i; j > 0 && lefts[j - 1] > lefts[j]; j--) {
+                swap(lefts, j, j - 1);
+                swap(rights, j, j - 1);
+                swap(indexes, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+
+    private static int[] distinct(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+
+        return Arrays.copyOf(sorted, count);
+    }
+
+    private static int clamp(int value, int length) {
+        if (value < 0) {
+            return 0;
+        }
+
+        return value >= length ? length - 1 : value;
+    }
+}
@@ -15,8 +15,8 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.inputmethod.CompletionInfo;
 import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.ExtractedText;
 import android.view.inputmethod.InputConnection;
-import androidx.core.text.BidiFormatter;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardController.InputListener;
 import com.liskovsoft.leankeyboard.utils.Analytics;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
@@ -39,6 +39,9 @@ public class LeanbackImeService extends KeyMapperImeService {
     private LeanbackSuggestionsFactory mSuggestionsFactory;
     public static final String COMMAND_RESTART = "restart";
     private boolean mForceShowKbd;
+    private final EditorTextMirror mEditorMirror = new EditorTextMirror(this);
+    private final EditorDispatcher mEditorDispatcher = new EditorDispatcher();
+    private final EditorCommitPipeline mCommitPipeline = new EditorCommitPipeline(this, mEditorMirror, mEditorDispatcher);
 
     @SuppressLint("HandlerLeak")
     private final Handler mHandler = new Handler() {
@@ -73,6 +76,14 @@ public class LeanbackImeService extends KeyMapperImeService {
                 new UncaughtExceptionHandler(getApplicationContext(), true));
         Analytics.init(getApplicationContext());
 
+        mEditorMirror.setFetcher(mCommitPipeline);
+        // text could be fetched after suggestions were updated
+        mEditorMirror.setOnSyncListener(() -> {
+            if (mKeyboardController != null) {
+                updateSuggestions();
+            }
+        });
+
         initSettings();
     }
 
@@ -108,18 +119,23 @@ public class LeanbackImeService extends KeyMapperImeService {
         final InputConnection connection = getCurrentInputConnection();
         if (connection != null) {
             boolean updateSuggestions;
+            mCommitPipeline.beginEntry();
+            if (!isCoalescible(type)) {
+                // entry reads editor's state or sends something except text
+                mCommitPipeline.flush(true);
+            }
             switch (type) {
                 case InputListener.ENTRY_TYPE_STRING:
                     clearSuggestionsDelayed();
                     if (mEnterSpaceBeforeCommitting && mKeyboardController.enableAutoEnterSpace()) {
                         if (LeanbackUtils.isAlphabet(keyCode)) {
-                            connection.commitText(" ", 1);
+                            mCommitPipeline.commitText(" ");
                         }
 
                         mEnterSpaceBeforeCommitting = false;
                     }
 
-                    connection.commitText(text, 1);
+                    mCommitPipeline.commitText(text);
                     updateSuggestions = true;
                     if (keyCode == LeanbackKeyboardView.ASCII_PERIOD) {
                         mEnterSpaceBeforeCommitting = true;
@@ -127,118 +143,136 @@ public class LeanbackImeService extends KeyMapperImeService {
                     break;
                 case InputListener.ENTRY_TYPE_BACKSPACE:
                     clearSuggestionsDelayed();
-                    connection.deleteSurroundingText(1, 0);
+                    mCommitPipeline.deleteBeforeCursor(1);
+                    mEnterSpaceBeforeCommitting = false;
+                    updateSuggestions = true;
+                    break;
+                case InputListener.ENTRY_TYPE_DELETE_WORD:
+                    clearSuggestionsDelayed();
+                    mCommitPipeline.edit((editorText, editor) -> editor.deleteBeforeCursor(LeanbackUtils.getWordLengthBeforeCursor(editorText)));
                     mEnterSpaceBeforeCommitting = false;
                     updateSuggestions = true;
                     break;
                 case InputListener.ENTRY_TYPE_SUGGESTION:
                 case InputListener.ENTRY_TYPE_VOICE:
                     clearSuggestionsDelayed();
-                    if (!mSuggestionsFactory.shouldSuggestionsAmend()) {
-                        connection.deleteSurroundingText(LeanbackUtils.getCharLengthBeforeCursor(connection), LeanbackUtils.getCharLengthAfterCursor(connection));
-                    } else {
-                        int location = LeanbackUtils.getAmpersandLocation(connection);
-                        connection.setSelection(location, location);
-                        connection.deleteSurroundingText(0, LeanbackUtils.getCharLengthAfterCursor(connection));
-                    }
+                    final boolean amend = mSuggestionsFactory.shouldSuggestionsAmend();
+                    mCommitPipeline.edit((editorText, editor) -> {
+                        if (!amend) {
+                            editor.deleteSurroundingText(
+                                    LeanbackUtils.getCharLengthBeforeCursor(editorText), LeanbackUtils.getCharLengthAfterCursor(editorText));
+                        } else {
+                            int location = LeanbackUtils.getAmpersandLocation(editorText);
+                            // text after location
+                            int lenAfter = LeanbackUtils.getEditorText(editorText).length() - location;
+                            editor.setSelection(location, location);
+                            editor.deleteSurroundingText(0, lenAfter);
+                        }
+                    });
 
-                    connection.commitText(text, 1);
+                    mCommitPipeline.commitText(text);
                     mEnterSpaceBeforeCommitting = true;
                 case InputListener.ENTRY_TYPE_ACTION:  // User presses Go, Send, Search etc
-                    boolean result = sendDefaultEditorAction(true);
+                    boolean result = performDefaultEditorAction();
 
                     if (result) {
                         hideWindow(); // SmartYouTubeTV: hide kbd on search page fix
                     } else {
-                        LeanbackUtils.sendEnterKey(connection);
+                        mCommitPipeline.perform(LeanbackUtils::sendEnterKey);
                     }
 
                     updateSuggestions = false;
                     break;
                 case InputListener.ENTRY_TYPE_LEFT:
                 case InputListener.ENTRY_TYPE_RIGHT:
-                    BidiFormatter formatter = BidiFormatter.getInstance();
-
-                    CharSequence textBeforeCursor = connection.getTextBeforeCursor(1000, 0);
-                    int lenBefore = 0;
-                    boolean isRtlBefore = false;
-                    //int rtlLenBefore = 0;
-                    if (textBeforeCursor != null) {
-                        lenBefore = textBeforeCursor.length();
-                        isRtlBefore = formatter.isRtl(textBeforeCursor);
-                        //rtlLenBefore = LeanbackUtils.getRtlLenBeforeCursor(textBeforeCursor);
-                    }
-
-                    CharSequence textAfterCursor = connection.getTextAfterCursor(1000, 0);
-                    int lenAfter = 0;
-                    //int rtlLenAfter = 0;
-                    boolean isRtlAfter = false;
-                    if (textAfterCursor != null) {
-                        lenAfter = textAfterCursor.length();
-                        isRtlAfter = formatter.isRtl(textAfterCursor);
-                        //rtlLenAfter = LeanbackUtils.getRtlLenAfterCursor(textAfterCursor);
-                    }
-
-                    int index = lenBefore;
-                    if (type == InputListener.ENTRY_TYPE_LEFT) {
-                        if (lenBefore > 0) {
-                            if (!isRtlBefore) {
-                                index = lenBefore - 1;
-                            } else {
-                                if (lenAfter == 0) {
-                                    index = 1;
-                                } else if (lenAfter == 1) {
-                                    index = 0;
-                                } else {
-                                    index = lenBefore + 1;
-                                }
-                            }
-                        }
+                    final boolean left = type == InputListener.ENTRY_TYPE_LEFT;
+                    mCommitPipeline.edit((editorText, editor) -> {
+                        int index = editorText.getNextCursorPosition(left);
 
-                        //Log.d(TAG, String.format("direction key: before: lenBefore=%s, lenAfter=%s, rtlLenBefore=%s, rtlLenAfter=%s", lenBefore, lenAfter, rtlLenBefore, rtlLenAfter));
-                        Log.d(TAG, String.format("direction key: before: lenBefore=%s, lenAfter=%s, isRtlBefore=%s", lenBefore, lenAfter, isRtlBefore));
-                    } else {
-                        if (lenAfter > 0) {
-                            if (!isRtlAfter) {
-                                index = lenBefore + 1;
-                            } else {
-                                if (lenBefore == 0) {
-                                    index = lenAfter - 1;
-                                } else if (lenBefore == 1) {
-                                    index = lenAfter + 1;
-                                } else {
-                                    index = lenBefore - 1;
-                                }
-                            }
+                        if (DEBUG) {
+                            Log.d(TAG, "direction key: index: " + index);
                         }
 
-                        //Log.d(TAG, String.format("direction key: after: lenBefore=%s, lenAfter=%s, rtlLenBefore=%s, rtlLenAfter=%s", lenBefore, lenAfter, rtlLenBefore, rtlLenAfter));
-                        Log.d(TAG, String.format("direction key: after: lenBefore=%s, lenAfter=%s, isRtlAfter=%s", lenBefore, lenAfter, isRtlAfter));
-                    }
-
-                    Log.d(TAG, "direction key: index: " + index);
-
-                    connection.setSelection(index, index);
+                        editor.setSelection(index, index);
+                    });
                     updateSuggestions = true;
                     break;
                 case InputListener.ENTRY_TYPE_DISMISS:
-                    connection.performEditorAction(EditorInfo.IME_ACTION_NONE);
+                    mCommitPipeline.perform(c -> c.performEditorAction(EditorInfo.IME_ACTION_NONE));
                     updateSuggestions = false;
                     break;
                 case InputListener.ENTRY_TYPE_VOICE_DISMISS:
-                    connection.performEditorAction(EditorInfo.IME_ACTION_GO);
+                    mCommitPipeline.perform(c -> c.performEditorAction(EditorInfo.IME_ACTION_GO));
                     updateSuggestions = false;
                     break;
                 default:
                     updateSuggestions = true;
             }
 
-            if (mKeyboardController.areSuggestionsEnabled() && updateSuggestions) {
-                mKeyboardController.updateSuggestions(mSuggestionsFactory.getSuggestions());
+            boolean committed = mCommitPipeline.endEntry();
+
+            // otherwise suggestions are updated after delayed commit
+            if (committed && updateSuggestions) {
+                updateSuggestions();
             }
         }
     }
 
+    /**
+     * Entries that could be coalesced with the next ones (cursor keys and word delete use local copy of the text)
+     */
+    private static boolean isCoalescible(int type) {
+        switch (type) {
+            case InputListener.ENTRY_TYPE_STRING:
+            case InputListener.ENTRY_TYPE_BACKSPACE:
+            case InputListener.ENTRY_TYPE_DELETE_WORD:
+            case InputListener.ENTRY_TYPE_LEFT:
+            case InputListener.ENTRY_TYPE_RIGHT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Same as {@link #sendDefaultEditorAction(boolean)} (from editor) but ordered after pending edits
+     */
+    private boolean performDefaultEditorAction() {
+        EditorInfo info = getCurrentInputEditorInfo();
+
+        if (info == null || (info.imeOptions & EditorInfo.IME_FLAG_NO_ENTER_ACTION) != 0 ||
+                (info.imeOptions & EditorInfo.IME_MASK_ACTION) == EditorInfo.IME_ACTION_NONE) {
+            return false;
+        }
+
+        final int action = info.imeOptions & EditorInfo.IME_MASK_ACTION;
+        mCommitPipeline.perform(c -> c.performEditorAction(action));
+
+        return true;
+    }
+
+    private void updateSuggestions() {
+        if (mKeyboardController.areSuggestionsEnabled()) {
+            mKeyboardController.updateSuggestions(mSuggestionsFactory.getSuggestions());
+        }
+    }
+
+    EditorTextMirror getEditorMirror() {
+        return mEditorMirror;
+    }
+
+    @Override
+    public void onUpdateSelection(int oldSelStart, int oldSelEnd, int newSelStart, int newSelEnd, int candidatesStart, int candidatesEnd) {
+        super.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd, candidatesStart, candidatesEnd);
+        mEditorMirror.onUpdateSelection(newSelStart, newSelEnd);
+    }
+
+    @Override
+    public void onUpdateExtractedText(int token, ExtractedText text) {
+        super.onUpdateExtractedText(token, text);
+        mEditorMirror.onUpdateExtractedText(token, text);
+    }
+
     @Override
     public View onCreateInputView() {
         mInputView = mKeyboardController.getView();
@@ -281,6 +315,19 @@ public class LeanbackImeService extends KeyMapperImeService {
         return mForceShowKbd || super.onShowInputRequested(flags, configChange);
     }
 
+    @Override
+    public void onFinishInput() {
+        mCommitPipeline.flush(true);
+        mCommitPipeline.logStats();
+        super.onFinishInput();
+    }
+
+    @Override
+    public void onDestroy() {
+        mEditorDispatcher.quit();
+        super.onDestroy();
+    }
+
     @Override
     public void onFinishInputView(boolean finishingInput) {
         super.onFinishInputView(finishingInput);
@@ -303,12 +350,22 @@ public class LeanbackImeService extends KeyMapperImeService {
         requestHideSelf(InputMethodService.BACK_DISPOSITION_DEFAULT);
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if (mKeyboardController != null) {
+            mKeyboardController.onTrimMemory(level);
+        }
+    }
+
     @Override
     public void onInitializeInterface() {
         mKeyboardController = new LeanbackKeyboardController(this, mInputListener);
         mKeyboardController.setHideWhenPhysicalKeyboardUsed(!mForceShowKbd);
         mEnterSpaceBeforeCommitting = false;
         mSuggestionsFactory = new LeanbackSuggestionsFactory(this, MAX_SUGGESTIONS);
+        mCommitPipeline.setOnDelayedFlush(this::updateSuggestions);
     }
 
     @Override
@@ -364,6 +421,8 @@ public class LeanbackImeService extends KeyMapperImeService {
     @Override
     public void onStartInput(EditorInfo info, boolean restarting) {
         super.onStartInput(info, restarting);
+        mEditorMirror.reset();
+        mCommitPipeline.reset();
         mEnterSpaceBeforeCommitting = false;
         if (!restarting) {
             mSuggestionsFactory.onStartInput(info);
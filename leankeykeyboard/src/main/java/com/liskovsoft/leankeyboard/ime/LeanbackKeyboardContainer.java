@@ -86,6 +86,7 @@ public class LeanbackKeyboardContainer {
     private final float mAlphaIn;
     private final float mAlphaOut;
     private boolean mAutoEnterSpaceEnabled;
+    private boolean mCyclicNavigationEnabled;
     private boolean mCapCharacters;
     private boolean mCapSentences;
     private boolean mCapWords;
@@ -312,6 +313,14 @@ public class LeanbackKeyboardContainer {
         updateAddonKeyboard();
     }
 
+    /**
+     * NOTE: Keyboards that are on screen or next in the cycle are kept
+     * @param level {@link android.content.ComponentCallbacks2} trim level
+     */
+    public void onTrimMemory(int level) {
+        mKeyboardManager.onTrimMemory(level);
+    }
+
     private boolean isMatch(Locale var1, Locale[] var2) {
         int var4 = var2.length;
 
@@ -691,18 +700,40 @@ public class LeanbackKeyboardContainer {
         return type == KeyFocus.TYPE_MAIN ? this.mMainKeyboardView.getKey(index) : null;
     }
 
+    /**
+     * NOTE: Apply target from the {@link KeyboardNavigationGraph}
+     * @param target key index or one of the graph TARGET_* constants (except north)
+     */
+    private void moveFocusToGraphTarget(int target, KeyFocus startFocus, KeyFocus nextFocus) {
+        if (target == KeyboardNavigationGraph.TARGET_ACTION) {
+            offsetRect(mRect, mActionButtonView);
+            configureFocus(nextFocus, mRect, 0, KeyFocus.TYPE_ACTION);
+            return;
+        }
+
+        if (target == KeyboardNavigationGraph.TARGET_NONE) {
+            nextFocus.set(startFocus);
+            return;
+        }
+
+        offsetRect(mRect, mMainKeyboardView);
+        configureFocus(nextFocus, mRect, target, mMainKeyboardView.getKey(target), KeyFocus.TYPE_MAIN);
+    }
+
     public void updateCyclicFocus(int dir, KeyFocus oldFocus, KeyFocus newFocus) {
         if (oldFocus.equals(newFocus) || LeanbackUtils.isSubmitButton(newFocus)) {
-            if (LeanKeyPreferences.instance(mContext).getCyclicNavigationEnabled()) {
+            if (mCyclicNavigationEnabled) {
+                KeyboardNavigationGraph graph = mMainKeyboardView.getNavigationGraph();
+
                 if (dir == DIRECTION_RIGHT || dir == DIRECTION_LEFT) {
-                    Rect actionRect = new Rect();
-                    offsetRect(actionRect, mActionButtonView);
-                    boolean onSameRow = Math.abs(oldFocus.rect.top - actionRect.top) < 20;
+                    offsetRect(mRect, mActionButtonView);
+                    boolean onSameRow = Math.abs(oldFocus.rect.top - mRect.top) < 20;
 
                     if (onSameRow && !LeanbackUtils.isSubmitButton(oldFocus)) {
                         // move focus to submit button
-                        offsetRect(mRect, mActionButtonView);
                         configureFocus(newFocus, mRect, 0, KeyFocus.TYPE_ACTION);
+                    } else if (graph != null && oldFocus.type == KeyFocus.TYPE_MAIN) {
+                        moveFocusToGraphTarget(graph.getWrap(oldFocus.index, dir), oldFocus, newFocus);
                     } else {
                         offsetRect(mRect, mMainKeyboardView);
                         float x = dir == DIRECTION_RIGHT ? 0 : mRect.right; // 0 - rightmost position, right - leftmost
@@ -711,7 +742,9 @@ public class LeanbackKeyboardContainer {
                         configureFocus(newFocus, mRect, keyIdx, key, 0);
                     }
                 } else if (dir == DIRECTION_DOWN || dir == DIRECTION_UP) {
-                    if (!LeanbackUtils.isSubmitButton(oldFocus)) {
+                    if (graph != null && oldFocus.type == KeyFocus.TYPE_MAIN) {
+                        moveFocusToGraphTarget(graph.getWrap(oldFocus.index, dir), oldFocus, newFocus);
+                    } else if (!LeanbackUtils.isSubmitButton(oldFocus)) {
                         offsetRect(mRect, mMainKeyboardView);
                         float y = dir == DIRECTION_DOWN ? 0 : mRect.bottom; // 0 - topmost position, bottom - downmost
                         int keyIdx = mMainKeyboardView.getNearestIndex(oldFocus.rect.left - mRect.left, y);
@@ -745,6 +778,12 @@ public class LeanbackKeyboardContainer {
     public boolean getNextFocusInDirection(int direction, KeyFocus startFocus, KeyFocus nextFocus) {
         switch (startFocus.type) {
             case KeyFocus.TYPE_MAIN:
+                KeyboardNavigationGraph graph = mMainKeyboardView.getNavigationGraph();
+                boolean isVertical = (direction & (DIRECTION_UP | DIRECTION_DOWN)) != 0;
+                // space key remembers column from which it was entered, so vertical move from it depends on the history
+                boolean isHistoryDependent = startFocus.code == LeanbackKeyboardView.ASCII_SPACE && isVertical;
+
+                // point next to the key in the given direction
                 Key key = getKey(startFocus.type, startFocus.index);
                 float centerDelta = (float) startFocus.rect.height() / 2.0F;
                 float centerX = (float) startFocus.rect.centerX();
@@ -758,10 +797,7 @@ public class LeanbackKeyboardContainer {
                         centerX = (float) startFocus.rect.left - centerDelta;
                     }
                 } else if ((direction & DIRECTION_RIGHT) != 0) {
-                    if ((key.edgeFlags & Keyboard.EDGE_RIGHT) != 0) {
-                        offsetRect(mRect, mActionButtonView);
-                        centerX = (float) mRect.centerX();
-                    } else {
+                    if ((key.edgeFlags & Keyboard.EDGE_RIGHT) == 0) {
                         centerX = (float) startFocus.rect.right + centerDelta;
                     }
                 }
@@ -775,7 +811,29 @@ public class LeanbackKeyboardContainer {
                     }
                 }
 
+                if (graph != null && !isHistoryDependent) {
+                    int target = graph.getNext(startFocus.index, direction);
+
+                    if (target != KeyboardNavigationGraph.TARGET_NORTH) {
+                        if (target != KeyboardNavigationGraph.TARGET_ACTION) {
+                            // same point as the search below remembers (column of the space key)
+                            mX = centerX;
+                            mY = centerDelta;
+                        }
+
+                        moveFocusToGraphTarget(target, startFocus, nextFocus);
+                        return true;
+                    }
+                }
+
+                // no graph or target is outside of the keyboard: search from that point
+                if ((direction & DIRECTION_RIGHT) != 0 && (key.edgeFlags & Keyboard.EDGE_RIGHT) != 0) {
+                    offsetRect(mRect, mActionButtonView);
+                    centerX = (float) mRect.centerX();
+                }
+
                 getPhysicalPosition(centerX, centerDelta, mTempPoint);
+
                 return getBestFocus(centerX, centerDelta, nextFocus);
             case KeyFocus.TYPE_VOICE:
             default:
@@ -984,6 +1042,7 @@ public class LeanbackKeyboardContainer {
 
     @SuppressLint("NewApi")
     public void onStartInputView() {
+        mCyclicNavigationEnabled = LeanKeyPreferences.instance(mContext).getCyclicNavigationEnabled();
         clearSuggestions();
         LayoutParams params = (LayoutParams) mKeyboardsContainer.getLayoutParams();
         if (mSuggestionsEnabled) {
@@ -1187,15 +1246,25 @@ public class LeanbackKeyboardContainer {
         } else {
             mInitialMainKeyboard = nextKeyboard.abcKeyboard;
             mAbcKeyboard = nextKeyboard.abcKeyboard;
-            mMainKeyboardView.setKeyboard(nextKeyboard.abcKeyboard, true, false);
+            mMainKeyboardView.setKeyboardAsync(nextKeyboard.abcKeyboard, true, false);
 
             mSymKeyboard = nextKeyboard.symKeyboard;
             mNumKeyboard = nextKeyboard.numKeyboard;
+
+            prefetchNextKeyboard();
         }
     }
 
+    /**
+     * Prepare next keyboard in the background while user is typing
+     */
+    private void prefetchNextKeyboard() {
+        mKeyboardManager.prefetch(data -> mMainKeyboardView.prefetchKeyboard(data.abcKeyboard));
+    }
+
     public void updateAddonKeyboard() {
-        mKeyboardManager.load(); // force reload to fix such errors as invisible kbd
+        // NOTE: keyboard is set anyway to fix such errors as invisible kbd
+        mKeyboardManager.reloadIfChanged();
         KeyboardData keyboard = mKeyboardManager.get();
         mInitialMainKeyboard = keyboard.abcKeyboard;
         mAbcKeyboard = keyboard.abcKeyboard;
@@ -1205,6 +1274,8 @@ public class LeanbackKeyboardContainer {
         mNumKeyboard = keyboard.numKeyboard;
 
         mThemeManager.updateKeyboardTheme();
+
+        prefetchNextKeyboard();
     }
 
     public void updateSuggestions(ArrayList<String> suggestions) {
@@ -1242,7 +1313,7 @@ public class LeanbackKeyboardContainer {
         InputConnection connection = mContext.getCurrentInputConnection();
 
         if (connection != null) {
-            String editorText = LeanbackUtils.getEditorText(connection);
+            String editorText = LeanbackUtils.getEditorText(mContext.getEditorMirror());
 
             if (editorText.isEmpty()) {
                 editorText = mLabel;
@@ -18,7 +18,7 @@ import android.widget.RelativeLayout;
 import androidx.annotation.NonNull;
 
 import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardInfo;
-import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.ResKeyboardInfo;
+import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.KeyboardInfoRegistry;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardContainer.KeyFocus;
 import com.liskovsoft.leankeyboard.ime.pano.util.TouchNavSpaceTracker;
 import com.liskovsoft.leankeykeyboard.R;
@@ -58,6 +58,7 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
     private boolean mShowInput;
     private int mLastEditorIdPhysicalKeyboardWasUsed;
     private boolean mHideKeyboardWhenPhysicalKeyboardUsed = true;
+    private final KeyRepeatAccelerator mRepeatAccelerator = new KeyRepeatAccelerator();
 
     public LeanbackKeyboardController(final InputMethodService context,
                                       final InputListener listener) {
@@ -99,11 +100,12 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         mContainer.setVoiceListener(this);
         mContainer.setDismissListener(this);
 
-        List<KeyboardInfo> keyboardInfoList = ResKeyboardInfo.getAllKeyboardInfos(context);
+        KeyboardInfoRegistry registry = KeyboardInfoRegistry.instance(context);
+        List<KeyboardInfo> keyboardInfoList = registry.getAll();
         for (KeyboardInfo keyboardInfo : keyboardInfoList) {
             keyboardInfo.setEnabled(true);
         }
-        ResKeyboardInfo.updateAllKeyboardInfos(mContext, keyboardInfoList);
+        registry.update(keyboardInfoList);
     }
 
     private boolean applyLETVFixesDown(int keyCode) {
@@ -366,8 +368,14 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         }
     }
 
-    private boolean handleKeyDownEvent(int keyCode, int eventRepeatCount) {
+    /**
+     * @param holdTimeMs how long the key is held (used to speed up repeats)
+     */
+    private boolean handleKeyDownEvent(int keyCode, int eventRepeatCount, long holdTimeMs) {
         keyCode = getSimplifiedKey(keyCode);
+        // selector can't keep up with repeats, so it's moved without animation
+        boolean animate = eventRepeatCount == 0;
+        int navigationSteps = mRepeatAccelerator.getNavigationSteps(holdTimeMs);
         boolean handled;
         if (keyCode == KeyEvent.KEYCODE_BACK) {
             mContainer.cancelVoiceRecording();
@@ -382,16 +390,16 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
             handled = true;
             switch (keyCode) {
                 case KeyEvent.KEYCODE_DPAD_UP:
-                    handled = onDirectionalMove(LeanbackKeyboardContainer.DIRECTION_UP);
+                    handled = onDirectionalMove(LeanbackKeyboardContainer.DIRECTION_UP, navigationSteps, animate);
                     break;
                 case KeyEvent.KEYCODE_DPAD_DOWN:
-                    handled = onDirectionalMove(LeanbackKeyboardContainer.DIRECTION_DOWN);
+                    handled = onDirectionalMove(LeanbackKeyboardContainer.DIRECTION_DOWN, navigationSteps, animate);
                     break;
                 case KeyEvent.KEYCODE_DPAD_LEFT:
-                    handled = onDirectionalMove(LeanbackKeyboardContainer.DIRECTION_LEFT);
+                    handled = onDirectionalMove(LeanbackKeyboardContainer.DIRECTION_LEFT, navigationSteps, animate);
                     break;
                 case KeyEvent.KEYCODE_DPAD_RIGHT:
-                    handled = onDirectionalMove(LeanbackKeyboardContainer.DIRECTION_RIGHT);
+                    handled = onDirectionalMove(LeanbackKeyboardContainer.DIRECTION_RIGHT, navigationSteps, animate);
                     break;
                 case KeyEvent.KEYCODE_DPAD_CENTER:
                 case KeyEvent.KEYCODE_ENTER:
@@ -405,12 +413,12 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
 
                     handled = true;
                     if (isKeyHandledOnKeyDown(mContainer.getCurrKeyCode())) {
-                        commitKey();
+                        commitRepeatedKey(mContainer.getCurrKeyCode(), holdTimeMs);
                         handled = true;
                     }
                     break;
                 case KeyEvent.KEYCODE_BUTTON_X:
-                    handleCommitKeyboardKey(LeanbackKeyboardView.KEYCODE_DELETE, null);
+                    commitRepeatedKey(LeanbackKeyboardView.KEYCODE_DELETE, holdTimeMs);
                     handled = true;
                     break;
                 case KeyEvent.KEYCODE_BUTTON_Y:
@@ -418,11 +426,11 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
                     handled = true;
                     break;
                 case KeyEvent.KEYCODE_BUTTON_L1:
-                    handleCommitKeyboardKey(LeanbackKeyboardView.KEYCODE_LEFT, null);
+                    commitRepeatedKey(LeanbackKeyboardView.KEYCODE_LEFT, holdTimeMs);
                     handled = true;
                     break;
                 case KeyEvent.KEYCODE_BUTTON_R1:
-                    handleCommitKeyboardKey(LeanbackKeyboardView.KEYCODE_RIGHT, null);
+                    commitRepeatedKey(LeanbackKeyboardView.KEYCODE_RIGHT, holdTimeMs);
                     handled = true;
                 case KeyEvent.KEYCODE_BUTTON_THUMBL:
                 case KeyEvent.KEYCODE_BUTTON_THUMBR:
@@ -446,6 +454,35 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         return handled;
     }
 
+    /**
+     * Delete and cursor keys that are handled on key down (so they're repeated while held).<br/>
+     * The longer key is held, the more chars are processed at once. Long held delete removes whole words.
+     * @param keyCode key code e.g. {@link LeanbackKeyboardView#KEYCODE_DELETE LeanbackKeyboardView.KEYCODE_DELETE}
+     */
+    private void commitRepeatedKey(int keyCode, long holdTimeMs) {
+        int steps;
+
+        if (keyCode == LeanbackKeyboardView.KEYCODE_DELETE) {
+            int words = mRepeatAccelerator.getDeleteWordSteps(holdTimeMs);
+
+            if (words > 0) {
+                for (int i = 0; i < words; i++) {
+                    mInputListener.onEntry(InputListener.ENTRY_TYPE_DELETE_WORD, LeanbackKeyboardView.SHIFT_OFF, null);
+                }
+
+                return;
+            }
+
+            steps = mRepeatAccelerator.getDeleteSteps(holdTimeMs);
+        } else {
+            steps = mRepeatAccelerator.getCursorSteps(holdTimeMs);
+        }
+
+        for (int i = 0; i < steps; i++) {
+            handleCommitKeyboardKey(keyCode, null);
+        }
+    }
+
     private boolean handleKeyLongPress(int keyCode) {
         mLongPressHandled = isEnterKey(keyCode) && mContainer.onKeyLongPress();
 
@@ -591,11 +628,30 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         mContainer.setFocus(mTempFocus, false);
     }
 
-    private boolean onDirectionalMove(int dir) {
-        if (mContainer.getNextFocusInDirection(dir, mCurrentFocus, mTempFocus)) {
+    /**
+     * Move focus by several keys at once. Selector is moved only to the last key.
+     * @param steps number of keys to move (stops at the edge of main keyboard)
+     */
+    private boolean onDirectionalMove(int dir, int steps, boolean animate) {
+        boolean found = false;
+
+        for (int i = 0; i < steps && mContainer.getNextFocusInDirection(dir, mCurrentFocus, mTempFocus); i++) {
             mContainer.updateCyclicFocus(dir, mCurrentFocus, mTempFocus);
-            mContainer.setFocus(mTempFocus);
+            found = true;
+
+            if (mTempFocus.equals(mCurrentFocus)) {
+                break;
+            }
+
             mCurrentFocus.set(mTempFocus);
+
+            if (mCurrentFocus.type != KeyFocus.TYPE_MAIN) {
+                break;
+            }
+        }
+
+        if (found) {
+            mContainer.setFocus(mCurrentFocus, animate);
             clearKeyIfNecessary();
         }
 
@@ -723,7 +779,7 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
                 }
             }
 
-            return handleKeyDownEvent(keyCode, event.getRepeatCount());
+            return handleKeyDownEvent(keyCode, event.getRepeatCount(), event.getEventTime() - event.getDownTime());
         }
     }
 
@@ -865,6 +921,12 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         mContainer.initKeyboards();
     }
 
+    public void onTrimMemory(int level) {
+        if (mContainer != null) {
+            mContainer.onTrimMemory(level);
+        }
+    }
+
     public void updateSuggestions(ArrayList<String> suggestions) {
         if (mContainer != null) {
             mContainer.updateSuggestions(suggestions);
@@ -912,6 +974,7 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         int ENTRY_TYPE_SUGGESTION = 2;
         int ENTRY_TYPE_VOICE = 6;
         int ENTRY_TYPE_VOICE_DISMISS = 8;
+        int ENTRY_TYPE_DELETE_WORD = 9;
 
         /**
          * User has typed something
@@ -946,7 +1009,7 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
                 }
             }
 
-            return handleKeyDownEvent(keyCode, event.getRepeatCount());
+            return handleKeyDownEvent(keyCode, event.getRepeatCount(), event.getEventTime() - event.getDownTime());
         }
 
         public boolean onKeyLongPress(int keyCode, KeyEvent event) {
@@ -1,5 +1,6 @@
 package com.liskovsoft.leankeyboard.ime;
 
+import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.Resources;
@@ -7,13 +8,19 @@ import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.Keyboard.Key;
+import android.inputmethodservice.Keyboard.Row;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -24,8 +31,12 @@ import androidx.core.content.ContextCompat;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
 import com.liskovsoft.leankeykeyboard.R;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class LeanbackKeyboardView extends FrameLayout {
     private static final String TAG = "LbKbView";
@@ -53,6 +64,14 @@ public class LeanbackKeyboardView extends FrameLayout {
     public static final int SHIFT_LOCKED = 2;
     public static final int SHIFT_OFF = 0;
     public static final int SHIFT_ON = 1;
+    /**
+     * Each key is a separate {@link ImageView} child
+     */
+    public static final int RENDER_MODE_VIEWS = 0;
+    /**
+     * All keys are drawn by the view itself inside {@link #onDraw(Canvas)}
+     */
+    public static final int RENDER_MODE_CANVAS = 1;
     private final int mNumRowCount;
     private final int mNumColCount;
     private final int mAbcColCount;
@@ -81,8 +100,36 @@ public class LeanbackKeyboardView extends FrameLayout {
     protected int mKeyTextSize;
     protected int mModeChangeTextSize;
     private Drawable mCustomCapsLockDrawable;
+    private final Drawable mShiftOffDrawable;
+    private final Drawable mShiftOnDrawable;
+    private final Drawable mShiftLockDrawable;
+    private final KeyTextStyles mTextStyles;
+    private float mSpaceIconGapDelta;
+    private final KeyBitmapCache mBitmapCache;
+    private ColorFilter mKeyColorFilter;
+    private final int mRenderMode;
+    private Bitmap[] mKeyBitmaps;
+    private float[] mKeyScales;
+    private final Paint mBitmapPaint;
+    private ValueAnimator[] mKeyAnimators;
+    private final BitSet mDirtyKeys = new BitSet();
+    private final PopupKeyboardCache mPopupKeyboardCache;
+    private static final ExecutorService sRenderExecutor = Executors.newSingleThreadExecutor();
+    private final Object mRenderLock = new Object();
+    private volatile int mRenderGeneration;
+    private volatile int mPrefetchGeneration;
+    private Keyboard mPrefetchedSource;
+    private Keyboard mPrefetchedKeyboard;
+    private KeyHolder[] mPrefetchedKeys;
+    private Drawable mPrefetchedCapsLockDrawable;
+    private KeyboardSpatialIndex mSpatialIndex;
+    private KeyboardNavigationGraph mNavigationGraph;
     private static final float LOWER_CASE_KEY_TRANSLATION_X_FACTOR = -0.01f;
     private static final float LOWER_CASE_KEY_TRANSLATION_Y_FACTOR = -0.075f;
+    /**
+     * Part of the app memory that could be occupied by the rendered keys
+     */
+    private static final int BITMAP_CACHE_MEMORY_DIVIDER = 16;
 
     private static class KeyConverter {
         private static final int LOWER_CASE = 0;
@@ -94,6 +141,14 @@ public class LeanbackKeyboardView extends FrameLayout {
             if (keyHolder.key.text == null) {
                 keyHolder.key.text = keyHolder.key.label;
             }
+
+            // both variants are computed once per key so case switching won't allocate anything
+            if (keyHolder.lowerLabel == null && keyHolder.key.text != null) {
+                keyHolder.lowerLabel = convert(LOWER_CASE, keyHolder.key.text);
+                keyHolder.upperLabel = convert(UPPER_CASE, keyHolder.key.text);
+                keyHolder.lowerTextFlags = KeyTextStyles.computeFlags(keyHolder.lowerLabel);
+                keyHolder.upperTextFlags = KeyTextStyles.computeFlags(keyHolder.upperLabel);
+            }
         }
 
         public void toLowerCase(KeyHolder keyHolder) {
@@ -107,8 +162,11 @@ public class LeanbackKeyboardView extends FrameLayout {
         private void extractChar(int charCase, KeyHolder keyHolder) {
             init(keyHolder);
 
+            keyHolder.key.label = charCase == UPPER_CASE ? keyHolder.upperLabel : keyHolder.lowerLabel;
+        }
+
+        private CharSequence convert(int charCase, CharSequence label) {
             CharSequence result = null;
-            CharSequence label = keyHolder.key.text;
 
             String[] labels = splitLabels(label);
 
@@ -121,7 +179,7 @@ public class LeanbackKeyboardView extends FrameLayout {
                     break;
             }
 
-            keyHolder.key.label = result;
+            return result;
         }
 
         private String[] splitLabels(CharSequence label) {
@@ -141,6 +199,8 @@ public class LeanbackKeyboardView extends FrameLayout {
         mAbcColCount = styledAttrs.getInteger(R.styleable.LeanbackKeyboardView_abcColumnCount, -1);
         mNumRowCount = styledAttrs.getInteger(R.styleable.LeanbackKeyboardView_numRowCount, -1);
         mNumColCount = styledAttrs.getInteger(R.styleable.LeanbackKeyboardView_numColumnCount, -1);
+        int renderMode = styledAttrs.getInt(R.styleable.LeanbackKeyboardView_renderMode, RENDER_MODE_VIEWS);
+        styledAttrs.recycle();
         mRowCount = mAbcRowCount;
         mColCount = mAbcColCount;
         mKeyTextSize = (int) res.getDimension(R.dimen.key_font_size);
@@ -161,13 +221,27 @@ public class LeanbackKeyboardView extends FrameLayout {
         mUnfocusStartDelay = res.getInteger(R.integer.unfocused_anim_delay);
         mInactiveMiniKbAlpha = res.getInteger(R.integer.inactive_mini_kb_alpha);
         mConverter = new KeyConverter();
+        mShiftOffDrawable = ContextCompat.getDrawable(context, R.drawable.ic_ime_shift_off);
+        mShiftOnDrawable = ContextCompat.getDrawable(context, R.drawable.ic_ime_shift_on);
+        mShiftLockDrawable = ContextCompat.getDrawable(context, R.drawable.ic_ime_shift_lock_on);
+        mTextStyles = new KeyTextStyles();
+        mBitmapCache = new KeyBitmapCache((int) (Runtime.getRuntime().maxMemory() / BITMAP_CACHE_MEMORY_DIVIDER));
+        mKeyColorFilter = new PorterDuffColorFilter(mKeyTextColor, PorterDuff.Mode.SRC_IN);
+        mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mPopupKeyboardCache = new PopupKeyboardCache(context);
+        mRenderMode = LeanKeyPreferences.instance(context).getSingleViewRenderingEnabled() ? RENDER_MODE_CANVAS : renderMode;
+        setWillNotDraw(mRenderMode != RENDER_MODE_CANVAS);
     }
 
     private void adjustCase(KeyHolder keyHolder) {
+        adjustCase(keyHolder, mKeyboard.isShifted());
+    }
+
+    private void adjustCase(KeyHolder keyHolder, boolean shifted) {
         boolean flag = keyHolder.isInMiniKb && keyHolder.isInvertible;
 
         // ^ equals to !=
-        if (mKeyboard.isShifted() ^ flag) {
+        if (shifted ^ flag) {
             mConverter.toUpperCase(keyHolder);
         } else {
             mConverter.toLowerCase(keyHolder);
@@ -177,48 +251,116 @@ public class LeanbackKeyboardView extends FrameLayout {
     /**
      * NOTE: Adds key views to root window
      */
-    @SuppressLint("NewApi")
     private ImageView createKeyImageView(final int keyIndex) {
-        Rect padding = mPadding;
+        ImageView image = new ImageView(getContext());
+        // Adds key views to root window
+        addView(image, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+        updateKeyImageView(image, keyIndex);
+        image.setVisibility(View.VISIBLE);
+
+        return image;
+    }
+
+    /**
+     * NOTE: Renders key into the existing view
+     */
+    private void updateKeyImageView(ImageView image, int keyIndex) {
         int kbdPaddingLeft = getPaddingLeft();
         int kbdPaddingTop = getPaddingTop();
-        KeyHolder keyHolder = mKeys[keyIndex];
-        Key key = keyHolder.key;
-        adjustCase(keyHolder);
-        String label;
-        if (key.label == null) {
-            label = null;
+        BitmapDrawable layer = getKeyLayer(keyIndex);
+        Key key = mKeys[keyIndex].key;
+
+        image.setImageDrawable(layer);
+        updateKeyColor(image);
+        image.setContentDescription(key.label);
+        // Set position manually for each key
+        image.setX((float) (key.x + kbdPaddingLeft));
+        image.setY((float) (key.y + kbdPaddingTop));
+        image.setImageAlpha(getKeyAlpha(keyIndex));
+    }
+
+    private int getKeyAlpha(int keyIndex) {
+        int opacity;
+        if (mMiniKeyboardOnScreen && !mKeys[keyIndex].isInMiniKb) {
+            opacity = mInactiveMiniKbAlpha;
         } else {
-            label = key.label.toString();
+            opacity = 255;
         }
 
-        if (Log.isLoggable(TAG, Log.DEBUG)) {
-            Log.d(TAG, "LABEL: " + key.label + "->" + label);
+        return opacity;
+    }
+
+    /**
+     * Get key bitmap from the cache or render the new one
+     */
+    private Bitmap getKeyBitmap(Key key, CharSequence label, int textFlags, int shiftState) {
+        // rendering could be done from the worker thread (see setKeyboardAsync)
+        synchronized (mRenderLock) {
+            return getKeyBitmapLocked(key, label, textFlags, shiftState);
+        }
+    }
+
+    private Bitmap getKeyBitmapLocked(Key key, CharSequence label, int textFlags, int shiftState) {
+        updateShiftIcon(key, shiftState);
+
+        KeyTextStyles.Style style = null;
+        float textSize = 0;
+        Typeface typeface = null;
+
+        if (key.icon == null && label != null) {
+            style = mTextStyles.get(textFlags);
+            textSize = style.textSize;
+            typeface = style.typeface;
         }
 
-        Bitmap bitmap = Bitmap.createBitmap(key.width, key.height, Config.ARGB_8888);
+        KeyBitmapCache.RenderKey renderKey = mBitmapCache.lookupKey();
+        renderKey.label = key.icon == null ? label : null; // label isn't drawn over the icon
+        renderKey.iconId = KeyBitmapCache.getIconId(key.icon);
+        renderKey.width = key.width;
+        renderKey.height = key.height;
+        renderKey.textSize = textSize;
+        renderKey.typeface = typeface;
+
+        Bitmap bitmap = mBitmapCache.get(renderKey);
+
+        if (bitmap == null) {
+            bitmap = renderKeyBitmap(key, label, style, textFlags);
+            mBitmapCache.put(renderKey, bitmap);
+        }
+
+        return bitmap;
+    }
+
+    private void updateShiftIcon(Key key, int shiftState) {
+        if (key.icon != null && key.codes[0] == NOT_A_KEY) {
+            switch (shiftState) {
+                case SHIFT_OFF:
+                    key.icon = mShiftOffDrawable;
+                    break;
+                case SHIFT_ON:
+                    key.icon = mShiftOnDrawable;
+                    break;
+                case SHIFT_LOCKED:
+                    if (mCustomCapsLockDrawable != null) {
+                        key.icon = mCustomCapsLockDrawable;
+                    } else {
+                        key.icon = mShiftLockDrawable;
+                    }
+            }
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private Bitmap renderKeyBitmap(Key key, CharSequence label, KeyTextStyles.Style style, int textFlags) {
+        Rect padding = mPadding;
+        // text is stored as alpha mask and tinted with the key color at draw time (see mKeyColorFilter)
+        Config config = key.icon == null ? Config.ALPHA_8 : Config.ARGB_8888;
+        Bitmap bitmap = Bitmap.createBitmap(key.width, key.height, config);
         Canvas canvas = new Canvas(bitmap);
         Paint paint = mPaint;
-        paint.setColor(mKeyTextColor);
+        paint.setColor(Color.BLACK);
         canvas.drawARGB(0, 0, 0, 0);
         if (key.icon != null) {
-            if (key.codes[0] == NOT_A_KEY) {
-                switch (mShiftState) {
-                    case SHIFT_OFF:
-                        key.icon = ContextCompat.getDrawable(getContext(), R.drawable.ic_ime_shift_off);
-                        break;
-                    case SHIFT_ON:
-                        key.icon = ContextCompat.getDrawable(getContext(), R.drawable.ic_ime_shift_on);
-                        break;
-                    case SHIFT_LOCKED:
-                        if (mCustomCapsLockDrawable != null) {
-                            key.icon = mCustomCapsLockDrawable;
-                        } else {
-                            key.icon = ContextCompat.getDrawable(getContext(), R.drawable.ic_ime_shift_lock_on);
-                        }
-                }
-            }
-
             // NOTE: Fix non proper scale of space key on low dpi
 
             int iconWidth = key.width; // originally used key.icon.getIntrinsicWidth();
@@ -230,11 +372,9 @@ public class LeanbackKeyboardView extends FrameLayout {
                 iconHeight = newSize;
             }
 
-            if (key.codes[0] == ASCII_SPACE && LeanKeyPreferences.instance(getContext()).getEnlargeKeyboard()) {
+            if (key.codes[0] == ASCII_SPACE) {
                 // space fix for large interface
-                float gap = getResources().getDimension(R.dimen.keyboard_horizontal_gap);
-                float gapDelta = (gap * 1.3f) - gap;
-                iconWidth -= gapDelta * (ASCII_PERIOD_LEN - 1);
+                iconWidth -= mSpaceIconGapDelta * (ASCII_PERIOD_LEN - 1);
             }
 
             int dx = (key.width - padding.left - padding.right - iconWidth) / 2 + padding.left;
@@ -245,52 +385,138 @@ public class LeanbackKeyboardView extends FrameLayout {
             key.icon.draw(canvas);
             canvas.translate((float) (-dx), (float) (-dy));
         } else if (label != null) {
-            if (label.length() > 1) {
-                paint.setTextSize((float) mModeChangeTextSize);
-                paint.setTypeface(Typeface.create("sans-serif", Typeface.NORMAL));
-            } else {
-                paint.setTextSize((float) mKeyTextSize);
-                paint.setTypeface(Typeface.create("sans-serif-light", Typeface.NORMAL));
-            }
+            paint.setTextSize(style.textSize);
+            paint.setTypeface(style.typeface);
 
-            if (TextUtils.isDigitsOnly(label)) {
+            if ((textFlags & KeyTextStyles.FLAG_DIGIT) != 0) {
                 canvas.translate(key.width * LOWER_CASE_KEY_TRANSLATION_X_FACTOR,
                         0);
-            } else if (!label.toUpperCase().equals(label)) {
+            } else if ((textFlags & KeyTextStyles.FLAG_LOWER_CASE) != 0) {
                 canvas.translate(key.width * LOWER_CASE_KEY_TRANSLATION_X_FACTOR,
                         key.height * LOWER_CASE_KEY_TRANSLATION_Y_FACTOR);
             }
             canvas.drawText(
                     label,
+                    0,
+                    label.length(),
                     (float) ((key.width - padding.left - padding.right) / 2 + padding.left),
-                    (float) ((key.height - padding.top - padding.bottom) / 2) + (paint.getTextSize() - paint.descent()) / 2.0F + (float) padding.top,
+                    (float) ((key.height - padding.top - padding.bottom) / 2) + style.baseline + (float) padding.top,
                     paint
             );
             paint.setShadowLayer(0.0F, 0.0F, 0.0F, 0);
         }
 
-        ImageView image = new ImageView(getContext());
-        image.setImageBitmap(bitmap);
-        image.setContentDescription(label);
-        // Adds key views to root window
-        addView(image, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
-        // Set position manually for each key
-        image.setX((float) (key.x + kbdPaddingLeft));
-        image.setY((float) (key.y + kbdPaddingTop));
-        int opacity;
-        if (mMiniKeyboardOnScreen && !keyHolder.isInMiniKb) {
-            opacity = mInactiveMiniKbAlpha;
-        } else {
-            opacity = 255;
+        return bitmap;
+    }
+
+    /**
+     * NOTE: Canvas mode. Keys are drawn later in {@link #onDraw(Canvas)}
+     */
+    private void createKeyBitmaps(KeyHolder[] keys) {
+        int totalKeys = keys.length;
+
+        if (mKeyBitmaps == null || mKeyBitmaps.length != totalKeys) {
+            mKeyBitmaps = new Bitmap[totalKeys];
+            mKeyScales = new float[totalKeys];
+            mKeyAnimators = new ValueAnimator[totalKeys];
+            Arrays.fill(mKeyScales, 1.0F);
         }
 
-        image.setImageAlpha(opacity);
-        image.setVisibility(View.VISIBLE);
+        for (int i = 0; i < totalKeys; ++i) {
+            mKeyBitmaps[i] = createKeyBitmap(i);
 
-        return image;
+            if (i != mFocusIndex) {
+                if (mKeyAnimators[i] != null) {
+                    mKeyAnimators[i].cancel();
+                    mKeyAnimators[i] = null;
+                }
+
+                mKeyScales[i] = 1.0F;
+            }
+        }
+
+        invalidate();
+    }
+
+    private Bitmap createKeyBitmap(int keyIndex) {
+        return getKeyLayer(keyIndex).getBitmap();
+    }
+
+    /**
+     * NOTE: Returns pre-rendered variant of the key that matches current case and shift state.<br/>
+     * Letter keys are rendered in both cases at once, so shift toggle only swaps layers.
+     */
+    private BitmapDrawable getKeyLayer(int keyIndex) {
+        KeyHolder keyHolder = mKeys[keyIndex];
+        adjustCase(keyHolder);
+
+        return getKeyLayer(keyHolder, mShiftState);
+    }
+
+    /**
+     * NOTE: Key case should be adjusted before the call
+     */
+    private BitmapDrawable getKeyLayer(KeyHolder keyHolder, int shiftState) {
+        if (keyHolder.layers == null) {
+            keyHolder.layers = new BitmapDrawable[KeyHolder.LAYERS_COUNT];
+        }
+
+        int layerIndex = getLayerIndex(keyHolder, shiftState);
+
+        if (keyHolder.layers[layerIndex] == null) {
+            if (keyHolder.isCaseDependent()) {
+                renderCaseLayers(keyHolder, shiftState);
+            } else {
+                Key key = keyHolder.key;
+                keyHolder.layers[layerIndex] = new BitmapDrawable(getResources(), getKeyBitmap(key, key.label, 0, shiftState));
+            }
+        }
+
+        return keyHolder.layers[layerIndex];
+    }
+
+    private int getLayerIndex(KeyHolder keyHolder, int shiftState) {
+        if (keyHolder.isCaseDependent()) {
+            return keyHolder.key.label == keyHolder.upperLabel ? KeyHolder.LAYER_UPPER_CASE : KeyHolder.LAYER_LOWER_CASE;
+        }
+
+        if (keyHolder.key.codes[0] == KEYCODE_SHIFT && shiftState >= 0) {
+            return shiftState;
+        }
+
+        return 0;
+    }
+
+    private void renderCaseLayers(KeyHolder keyHolder, int shiftState) {
+        Key key = keyHolder.key;
+        CharSequence label = key.label;
+        CharSequence lowerLabel = keyHolder.lowerLabel;
+        CharSequence upperLabel = keyHolder.upperLabel;
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "LABEL: " + key.text + "->" + lowerLabel + "|" + upperLabel);
+        }
+
+        key.label = lowerLabel;
+        BitmapDrawable lowerLayer = new BitmapDrawable(getResources(), getKeyBitmap(key, lowerLabel, keyHolder.lowerTextFlags, shiftState));
+        BitmapDrawable upperLayer = lowerLayer;
+
+        if (!TextUtils.equals(lowerLabel, upperLabel)) {
+            key.label = upperLabel;
+            upperLayer = new BitmapDrawable(getResources(), getKeyBitmap(key, upperLabel, keyHolder.upperTextFlags, shiftState));
+        }
+
+        key.label = label;
+        keyHolder.layers[KeyHolder.LAYER_LOWER_CASE] = lowerLayer;
+        keyHolder.layers[KeyHolder.LAYER_UPPER_CASE] = upperLayer;
     }
 
     private void createKeyImageViews(KeyHolder[] keys) {
+        if (mRenderMode == RENDER_MODE_CANVAS) {
+            createKeyBitmaps(keys);
+            return;
+        }
+
         if (mKeyImageViews != null) {
             ImageView[] images = mKeyImageViews;
             int totalImages = images.length;
@@ -325,27 +551,135 @@ public class LeanbackKeyboardView extends FrameLayout {
      * Any manipulations with keys should be done here.
      */
     private void setKeys(List<Key> keys) {
-        mKeys = new KeyHolder[keys.size()];
+        mKeys = createKeyHolders(keys);
+    }
+
+    private static KeyHolder[] createKeyHolders(List<Key> keys) {
+        KeyHolder[] holders = new KeyHolder[keys.size()];
         Iterator<Key> iterator = keys.iterator();
 
-        for (int i = 0; i < mKeys.length && iterator.hasNext(); ++i) {
+        for (int i = 0; i < holders.length && iterator.hasNext(); ++i) {
             Key key = iterator.next();
-            mKeys[i] = new KeyHolder(key);
+            holders[i] = new KeyHolder(key);
         }
+
+        return holders;
     }
 
     public boolean dismissMiniKeyboard() {
+        boolean dismiss = resetMiniKeyboard();
+
+        if (dismiss) {
+            invalidateDirtyKeys(true);
+        }
+
+        return dismiss;
+    }
+
+    /**
+     * NOTE: Restores original keys and marks them dirty. Doesn't redraw anything.
+     */
+    private boolean resetMiniKeyboard() {
         boolean dismiss = false;
         if (mMiniKeyboardOnScreen) {
             mMiniKeyboardOnScreen = false;
-            setKeys(mKeyboard.getKeys());
-            invalidateAllKeys();
+            markMiniKbKeysDirty();
+            restoreMiniKbKeys();
             dismiss = true;
         }
 
         return dismiss;
     }
 
+    /**
+     * NOTE: Unlike {@link #setKeys(List)} keeps pre-rendered layers of the untouched keys
+     */
+    private void restoreMiniKbKeys() {
+        List<Key> keys = mKeyboard.getKeys();
+
+        for (int i = 0; i < mKeys.length && i < keys.size(); i++) {
+            KeyHolder holder = mKeys[i];
+
+            if (holder.isInMiniKb) {
+                holder.setKey(keys.get(i));
+                holder.isInMiniKb = false;
+                holder.isInvertible = false;
+            }
+        }
+    }
+
+    private void markMiniKbKeysDirty() {
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i].isInMiniKb) {
+                mDirtyKeys.set(i);
+            }
+        }
+    }
+
+    /**
+     * Marks keys which label depends on the current case
+     */
+    private void markCaseDependentKeysDirty() {
+        for (int i = 0; i < mKeys.length; i++) {
+            Key key = mKeys[i].key;
+
+            if (key.icon != null) {
+                if (key.codes[0] == KEYCODE_SHIFT) {
+                    mDirtyKeys.set(i);
+                }
+                continue;
+            }
+
+            if (key.label == null) {
+                continue;
+            }
+
+            CharSequence label = key.label;
+            adjustCase(mKeys[i]);
+
+            if (!TextUtils.equals(label, key.label)) {
+                mDirtyKeys.set(i);
+            }
+        }
+    }
+
+    /**
+     * Re-renders only changed keys
+     * @param alphaChanged mini keyboard visibility has been changed so other keys need new alpha
+     */
+    private void invalidateDirtyKeys(boolean alphaChanged) {
+        if (getRenderedKeyCount() != mKeys.length) {
+            mDirtyKeys.clear();
+            invalidateAllKeys();
+            return;
+        }
+
+        for (int i = mDirtyKeys.nextSetBit(0); i >= 0; i = mDirtyKeys.nextSetBit(i + 1)) {
+            invalidateKey(i);
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Invalidated keys: " + mDirtyKeys.cardinality() + " of " + mKeys.length);
+        }
+
+        mDirtyKeys.clear();
+
+        if (alphaChanged) {
+            updateKeyAlphas();
+        }
+    }
+
+    private void updateKeyAlphas() {
+        if (mRenderMode == RENDER_MODE_CANVAS) {
+            invalidate();
+            return;
+        }
+
+        for (int i = 0; i < mKeyImageViews.length; i++) {
+            mKeyImageViews[i].setImageAlpha(getKeyAlpha(i));
+        }
+    }
+
     public int getBaseMiniKbIndex() {
         return mBaseMiniKbIndex;
     }
@@ -369,67 +703,26 @@ public class LeanbackKeyboardView extends FrameLayout {
     /**
      * Get index of the key under cursor
      * <br/>
-     * Resulted index depends on the space key position
+     * Uses real key geometry, so any layout (wide space, variable key width) is supported
      * @param x x position
      * @param y y position
      * @return index of the key
      */
     public int getNearestIndex(final float x, final float y) {
-        int result;
-        if (mKeys != null && mKeys.length != 0) {
-            float paddingLeft = (float) getPaddingLeft();
-            float paddingTop = (float) getPaddingTop();
-            float kbHeight = (float) (getMeasuredHeight() - getPaddingTop() - getPaddingBottom());
-            float kbWidth = (float) (getMeasuredWidth() - getPaddingLeft() - getPaddingRight());
-            final int rows = getRowCount();
-            final int cols = getColCount();
-            final int indexVert = (int) ((y - paddingTop) / kbHeight * (float) rows);
-            if (indexVert < 0) {
-                result = 0;
-            } else {
-                result = indexVert;
-                if (indexVert >= rows) {
-                    result = rows - 1;
-                }
-            }
-
-            final int indexHoriz = (int) ((x - paddingLeft) / kbWidth * (float) cols);
-            int indexFull;
-            if (indexHoriz < 0) {
-                indexFull = 0;
-            } else {
-                indexFull = indexHoriz;
-                if (indexHoriz >= cols) {
-                    indexFull = cols - 1;
-                }
-            }
-
-            indexFull += mColCount * result;
-            result = indexFull;
-            if (indexFull > ASCII_PERIOD) { // key goes beyond space
-                if (indexFull < (ASCII_PERIOD + ASCII_PERIOD_LEN)) {  // key stays within space boundary
-                    result = ASCII_PERIOD;
-                }
-            }
-
-            indexFull = result;
-            if (result >= (ASCII_PERIOD + ASCII_PERIOD_LEN)) { // is key position after space?
-                indexFull = result - ASCII_PERIOD_LEN + 1;
-            }
+        if (mKeys == null || mKeys.length == 0 || mSpatialIndex == null) {
+            return 0;
+        }
 
-            if (indexFull < 0) {
-                return 0;
-            }
+        int index = mSpatialIndex.find(x - getPaddingLeft(), y - getPaddingTop());
 
-            result = indexFull;
-            if (indexFull >= mKeys.length) {
-                return mKeys.length - 1;
-            }
-        } else {
-            result = 0;
-        }
+        return Math.min(index, mKeys.length - 1);
+    }
 
-        return result;
+    /**
+     * D-pad navigation between keys of the current layout
+     */
+    KeyboardNavigationGraph getNavigationGraph() {
+        return mNavigationGraph;
     }
 
     public int getRowCount() {
@@ -442,15 +735,39 @@ public class LeanbackKeyboardView extends FrameLayout {
 
     public void invalidateAllKeys() {
         createKeyImageViews(mKeys);
+
+        if (DEBUG) {
+            Log.d(TAG, "Key bitmap cache: " + mBitmapCache);
+        }
+    }
+
+    /**
+     * Key bitmap cache hits since view creation
+     */
+    public int getKeyCacheHitCount() {
+        return mBitmapCache.getHitCount();
+    }
+
+    /**
+     * Key bitmap cache misses since view creation
+     */
+    public int getKeyCacheMissCount() {
+        return mBitmapCache.getMissCount();
     }
 
     public void invalidateKey(int keyIndex) {
         if (mKeys != null && keyIndex >= 0 && keyIndex < mKeys.length) {
-            if (mKeyImageViews[keyIndex] != null) {
-                removeView(mKeyImageViews[keyIndex]);
+            if (mRenderMode == RENDER_MODE_CANVAS) {
+                mKeyBitmaps[keyIndex] = createKeyBitmap(keyIndex);
+                invalidate();
+                return;
             }
 
-            mKeyImageViews[keyIndex] = createKeyImageView(keyIndex);
+            if (mKeyImageViews[keyIndex] != null) {
+                updateKeyImageView(mKeyImageViews[keyIndex], keyIndex);
+            } else {
+                mKeyImageViews[keyIndex] = createKeyImageView(keyIndex);
+            }
         }
     }
 
@@ -462,17 +779,64 @@ public class LeanbackKeyboardView extends FrameLayout {
         return mShiftState == SHIFT_ON || mShiftState == SHIFT_LOCKED;
     }
 
+    public int getRenderMode() {
+        return mRenderMode;
+    }
+
     public void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+
+        if (mRenderMode != RENDER_MODE_CANVAS || mKeyBitmaps == null || mKeys == null) {
+            return;
+        }
+
+        int totalKeys = Math.min(mKeyBitmaps.length, mKeys.length);
+
+        for (int i = 0; i < totalKeys; ++i) {
+            if (i != mFocusIndex) {
+                drawKey(canvas, i);
+            }
+        }
+
+        // focused key is scaled so it should overlap its neighbours
+        if (mFocusIndex >= 0 && mFocusIndex < totalKeys) {
+            drawKey(canvas, mFocusIndex);
+        }
+    }
+
+    private void drawKey(Canvas canvas, int keyIndex) {
+        Bitmap bitmap = mKeyBitmaps[keyIndex];
+
+        if (bitmap == null) {
+            return;
+        }
+
+        Key key = mKeys[keyIndex].key;
+        float left = key.x + getPaddingLeft();
+        float top = key.y + getPaddingTop();
+        float scale = mKeyScales[keyIndex];
+
+        mBitmapPaint.setAlpha(getKeyAlpha(keyIndex));
+        mBitmapPaint.setColorFilter(isAlphaMask(bitmap) ? mKeyColorFilter : null);
+
+        if (scale == 1.0F) {
+            canvas.drawBitmap(bitmap, left, top, mBitmapPaint);
+        } else {
+            // same as view scale: pivot is the key center
+            int saveCount = canvas.save();
+            canvas.scale(scale, scale, left + bitmap.getWidth() / 2.0F, top + bitmap.getHeight() / 2.0F);
+            canvas.drawBitmap(bitmap, left, top, mBitmapPaint);
+            canvas.restoreToCount(saveCount);
+        }
     }
 
     public void onKeyLongPress() {
         int popupResId = mKeys[mFocusIndex].key.popupResId;
 
         if (popupResId != 0) {
-            dismissMiniKeyboard();
+            resetMiniKeyboard();
             mMiniKeyboardOnScreen = true;
-            List<Key> accentKeys = (new Keyboard(getContext(), popupResId)).getKeys();
+            List<Key> accentKeys = mPopupKeyboardCache.getKeys(popupResId);
             int totalAccentKeys = accentKeys.size();
             int baseIndex = mFocusIndex;
             int currentRow = mFocusIndex / mColCount;
@@ -488,26 +852,28 @@ public class LeanbackKeyboardView extends FrameLayout {
                 accentKey.x = mKeys[baseIndex + i].key.x;
                 accentKey.y = mKeys[baseIndex + i].key.y;
                 accentKey.edgeFlags = mKeys[baseIndex + i].key.edgeFlags;
-                mKeys[baseIndex + i].key = accentKey;
+                mKeys[baseIndex + i].setKey(accentKey);
                 mKeys[baseIndex + i].isInMiniKb = true;
                 KeyHolder holder = mKeys[baseIndex + i];
 
                 holder.isInvertible = i == 0; // uppercase first char
             }
 
-            invalidateAllKeys();
+            markMiniKbKeysDirty();
+            invalidateDirtyKeys(true);
         } else {
             boolean isSpecialKey = mKeys[mFocusIndex].key.icon != null; // space, paste, voice input etc
 
             if (!isSpecialKey) { // simply use the same char in uppercase
-                dismissMiniKeyboard();
+                resetMiniKeyboard();
                 mMiniKeyboardOnScreen = true;
                 mBaseMiniKbIndex = mFocusIndex;
 
                 mKeys[mFocusIndex].isInMiniKb = true;
                 mKeys[mFocusIndex].isInvertible = true;
 
-                invalidateAllKeys();
+                mDirtyKeys.set(mFocusIndex);
+                invalidateDirtyKeys(true);
             }
         }
     }
@@ -543,16 +909,44 @@ public class LeanbackKeyboardView extends FrameLayout {
      */
     public void setFocus(final int index, final boolean clicked, final boolean showFocusScale) {
         float scale = 1.0F;
-        if (mKeyImageViews != null && mKeyImageViews.length != 0) {
+        int totalKeys = getRenderedKeyCount();
+        if (totalKeys != 0) {
             int indexFull;
 
-            if (index >= 0 && index < mKeyImageViews.length) {
+            if (index >= 0 && index < totalKeys) {
                 indexFull = index;
             } else {
                 indexFull = -1;
             }
 
-            if (indexFull != mFocusIndex || clicked != mFocusClicked) {
+            if (mRenderMode == RENDER_MODE_CANVAS && (indexFull != mFocusIndex || clicked != mFocusClicked)) {
+                if (indexFull != mFocusIndex) {
+                    if (indexFull != -1) {
+                        setContentDescription(mKeys[indexFull].key.label);
+                        LeanbackUtils.sendAccessibilityEvent(this, true);
+                    }
+
+                    if (mFocusIndex != -1) {
+                        animateKeyScale(mFocusIndex, scale, mUnfocusStartDelay);
+                    }
+                }
+
+                if (indexFull != -1) {
+                    if (clicked) {
+                        scale = mClickedScale;
+                    } else if (showFocusScale) {
+                        scale = mFocusedScale;
+                    }
+
+                    animateKeyScale(indexFull, scale, 0);
+                }
+
+                mFocusIndex = indexFull;
+                mFocusClicked = clicked;
+                if (-1 != indexFull && !mKeys[indexFull].isInMiniKb) {
+                    dismissMiniKeyboard();
+                }
+            } else if (indexFull != mFocusIndex || clicked != mFocusClicked) {
                 if (indexFull != mFocusIndex) {
                     if (mFocusIndex != -1) {
                         LeanbackUtils.sendAccessibilityEvent(mKeyImageViews[mFocusIndex], false);
@@ -602,7 +996,249 @@ public class LeanbackKeyboardView extends FrameLayout {
 
     }
 
+    /**
+     * NOTE: Everything that doesn't depend on the particular key.<br/>
+     * Text sizes could be changed by subclasses before {@link #setKeyboard(Keyboard, boolean, boolean)}
+     */
+    private void prepareTextStyles() {
+        synchronized (mRenderLock) {
+            mTextStyles.prepare(mPaint, mKeyTextSize, mModeChangeTextSize);
+        }
+
+        if (LeanKeyPreferences.instance(getContext()).getEnlargeKeyboard()) {
+            float gap = getResources().getDimension(R.dimen.keyboard_horizontal_gap);
+            mSpaceIconGapDelta = (gap * 1.3f) - gap;
+        } else {
+            mSpaceIconGapDelta = 0;
+        }
+    }
+
+    private int getRenderedKeyCount() {
+        if (mRenderMode == RENDER_MODE_CANVAS) {
+            return mKeyBitmaps != null ? mKeyBitmaps.length : 0;
+        }
+
+        return mKeyImageViews != null ? mKeyImageViews.length : 0;
+    }
+
+    /**
+     * NOTE: Canvas mode. Per-key replacement of the view scale animation.
+     */
+    private void animateKeyScale(final int keyIndex, float scale, int startDelay) {
+        if (mKeyAnimators[keyIndex] != null) {
+            mKeyAnimators[keyIndex].cancel();
+        }
+
+        ValueAnimator animator = ValueAnimator.ofFloat(mKeyScales[keyIndex], scale);
+        animator.setInterpolator(LeanbackKeyboardContainer.sMovementInterpolator);
+        animator.setDuration(mClickAnimDur);
+        animator.setStartDelay(startDelay);
+        final float[] keyScales = mKeyScales;
+        animator.addUpdateListener(animation -> {
+            // keyboard could be changed during the animation
+            if (keyScales == mKeyScales) {
+                keyScales[keyIndex] = (float) animation.getAnimatedValue();
+                invalidate();
+            }
+        });
+        mKeyAnimators[keyIndex] = animator;
+        animator.start();
+    }
+
     public void setKeyboard(Keyboard keyboard, boolean isAbc, boolean isNum) {
+        clearPrefetchedKeyboard();
+        mRenderGeneration++; // drop pending async keyboard
+        keyboard = onPrepareKeyboard(keyboard);
+        removeMessages();
+        prepareTextStyles();
+        mPopupKeyboardCache.warmUp(keyboard);
+        applyKeyboard(keyboard, createKeyHolders(keyboard.getKeys()), isNum);
+        mFocusIndex = -1;
+        invalidateAllKeys();
+    }
+
+    /**
+     * Same as {@link #setKeyboard(Keyboard, boolean, boolean)} but keys are rendered on the worker thread.<br/>
+     * Current keyboard stays visible and focusable until the new one is ready.
+     */
+    public void setKeyboardAsync(Keyboard keyboard, boolean isAbc, final boolean isNum) {
+        if (mKeyboard == null || mKeys == null || mKeyboard.equals(keyboard)) {
+            setKeyboard(keyboard, isAbc, isNum);
+            return;
+        }
+
+        if (keyboard.equals(mPrefetchedSource)) {
+            Keyboard newKeyboard = mPrefetchedKeyboard;
+            KeyHolder[] keys = mPrefetchedKeys;
+            Drawable capsLockDrawable = mPrefetchedCapsLockDrawable;
+            clearPrefetchedKeyboard();
+            mRenderGeneration++; // drop pending async keyboard
+            removeMessages();
+            showRenderedKeyboard(newKeyboard, keys, capsLockDrawable, isNum);
+            return;
+        }
+
+        final int generation = ++mRenderGeneration;
+        final Keyboard newKeyboard = onPrepareKeyboard(keyboard);
+        removeMessages();
+        prepareTextStyles();
+        mPopupKeyboardCache.warmUp(newKeyboard);
+        final KeyHolder[] keys = createKeyHolders(newKeyboard.getKeys());
+        final int shiftState = mShiftState;
+        final Drawable capsLockDrawable = mCustomCapsLockDrawable;
+
+        final KeyHolder[] copies = createRenderCopies(newKeyboard, keys);
+
+        sRenderExecutor.execute(() -> {
+            for (KeyHolder holder : copies) {
+                if (generation != mRenderGeneration) {
+                    return; // outdated
+                }
+
+                adjustCase(holder, shiftState != SHIFT_OFF);
+                getKeyLayer(holder, shiftState);
+            }
+
+            post(() -> {
+                if (generation != mRenderGeneration) {
+                    return;
+                }
+
+                takeRenderedLayers(keys, copies);
+
+                showRenderedKeyboard(newKeyboard, keys, capsLockDrawable, isNum);
+            });
+        });
+    }
+
+    /**
+     * Render keys of the keyboard that most likely will be shown next (e.g. next language).<br/>
+     * {@link #setKeyboardAsync(Keyboard, boolean, boolean)} shows prefetched keyboard right away.
+     */
+    public void prefetchKeyboard(final Keyboard keyboard) {
+        if (keyboard == null || keyboard.equals(mKeyboard) || keyboard.equals(mPrefetchedSource)) {
+            return;
+        }
+
+        clearPrefetchedKeyboard();
+        final int generation = mPrefetchGeneration;
+        final Keyboard newKeyboard = onPrepareKeyboard(keyboard);
+        prepareTextStyles();
+        mPopupKeyboardCache.warmUp(newKeyboard);
+        final KeyHolder[] keys = createKeyHolders(newKeyboard.getKeys());
+        final int shiftState = mShiftState;
+        final Drawable capsLockDrawable = mCustomCapsLockDrawable;
+
+        final KeyHolder[] copies = createRenderCopies(newKeyboard, keys);
+
+        sRenderExecutor.execute(() -> {
+            for (KeyHolder holder : copies) {
+                if (generation != mPrefetchGeneration) {
+                    return; // outdated
+                }
+
+                adjustCase(holder, shiftState != SHIFT_OFF);
+                getKeyLayer(holder, shiftState);
+            }
+
+            post(() -> {
+                if (generation != mPrefetchGeneration) {
+                    return;
+                }
+
+                takeRenderedLayers(keys, copies);
+
+                mPrefetchedSource = keyboard;
+                mPrefetchedKeyboard = newKeyboard;
+                mPrefetchedKeys = keys;
+                mPrefetchedCapsLockDrawable = capsLockDrawable;
+            });
+        });
+    }
+
+    /**
+     * Keys that are rendered on the worker thread.<br/>
+     * NOTE: Rendering changes key labels and icons, so worker gets the copies (real keys could be on screen at the time).
+     */
+    private static KeyHolder[] createRenderCopies(Keyboard keyboard, KeyHolder[] keys) {
+        Row row = new Row(keyboard);
+        KeyHolder[] copies = new KeyHolder[keys.length];
+
+        for (int i = 0; i < keys.length; i++) {
+            Key key = keys[i].key;
+            Key copy = new Key(row);
+            copy.codes = key.codes;
+            copy.label = key.label;
+            copy.text = key.text;
+            copy.icon = key.icon;
+            copy.width = key.width;
+            copy.height = key.height;
+            copies[i] = new KeyHolder(copy);
+            copies[i].isInMiniKb = keys[i].isInMiniKb;
+            copies[i].isInvertible = keys[i].isInvertible;
+        }
+
+        return copies;
+    }
+
+    /**
+     * NOTE: Called on the main thread. Key case is adjusted later, when keyboard is applied.
+     */
+    private static void takeRenderedLayers(KeyHolder[] keys, KeyHolder[] copies) {
+        for (int i = 0; i < keys.length; i++) {
+            KeyHolder holder = keys[i];
+            KeyHolder copy = copies[i];
+
+            if (holder.key.text == null) {
+                holder.key.text = copy.key.text;
+            }
+
+            holder.lowerLabel = copy.lowerLabel;
+            holder.upperLabel = copy.upperLabel;
+            holder.lowerTextFlags = copy.lowerTextFlags;
+            holder.upperTextFlags = copy.upperTextFlags;
+            holder.layers = copy.layers;
+        }
+    }
+
+    private void clearPrefetchedKeyboard() {
+        mPrefetchGeneration++;
+        mPrefetchedSource = null;
+        mPrefetchedKeyboard = null;
+        mPrefetchedKeys = null;
+        mPrefetchedCapsLockDrawable = null;
+    }
+
+    /**
+     * NOTE: Keys should be rendered already
+     */
+    private void showRenderedKeyboard(Keyboard keyboard, KeyHolder[] keys, Drawable capsLockDrawable, boolean isNum) {
+        if (capsLockDrawable != mCustomCapsLockDrawable) {
+            // theme changed during rendering
+            for (KeyHolder holder : keys) {
+                holder.clearLayers();
+            }
+        }
+
+        int focusIndex = mFocusIndex;
+        boolean focusClicked = mFocusClicked;
+        applyKeyboard(keyboard, keys, isNum);
+        mFocusIndex = -1;
+        invalidateAllKeys();
+
+        if (focusIndex != -1) {
+            setFocus(focusIndex, focusClicked);
+        }
+    }
+
+    /**
+     * Hook for subclasses to alter keyboard before it's shown
+     */
+    protected Keyboard onPrepareKeyboard(Keyboard keyboard) {
+        return keyboard;
+    }
+
+    private void applyKeyboard(Keyboard keyboard, KeyHolder[] keys, boolean isNum) {
         if (isNum) {
             mRowCount = mNumRowCount;
             mColCount = mNumColCount;
@@ -610,15 +1246,16 @@ public class LeanbackKeyboardView extends FrameLayout {
             mRowCount = mAbcRowCount;
             mColCount = mAbcColCount;
         }
-        removeMessages();
         mKeyboard = keyboard;
-        setKeys(mKeyboard.getKeys());
+        mKeys = keys;
+        mSpatialIndex = KeyboardSpatialIndex.from(keyboard.getKeys());
+        mNavigationGraph = KeyboardNavigationGraph.from(keyboard.getKeys(), mSpatialIndex);
+        mMiniKeyboardOnScreen = false;
         int state = mShiftState;
         mShiftState = -1;
-        mFocusIndex = -1;
-        setShiftState(state);
+        mDirtyKeys.clear();
+        applyShiftState(state);
         requestLayout();
-        invalidateAllKeys();
     }
 
     /**
@@ -630,6 +1267,13 @@ public class LeanbackKeyboardView extends FrameLayout {
      * constants
      */
     public void setShiftState(int state) {
+        if (applyShiftState(state)) {
+            markCaseDependentKeysDirty();
+            invalidateDirtyKeys(false);
+        }
+    }
+
+    private boolean applyShiftState(int state) {
         if (mShiftState != state) {
             switch (state) {
                 case SHIFT_OFF:
@@ -641,25 +1285,105 @@ public class LeanbackKeyboardView extends FrameLayout {
             }
 
             mShiftState = state;
-            invalidateAllKeys();
+            return true;
         }
+
+        return false;
     }
 
     private static class KeyHolder {
+        private static final int LAYER_LOWER_CASE = 0;
+        private static final int LAYER_UPPER_CASE = 1;
+        private static final int LAYERS_COUNT = 3; // max of case count and shift states count
         public boolean isInMiniKb = false;
         public boolean isInvertible = false;
         public Key key;
+        public CharSequence lowerLabel;
+        public CharSequence upperLabel;
+        public int lowerTextFlags;
+        public int upperTextFlags;
+        /**
+         * Pre-rendered key variants: lower/upper case for letters or shift state for the shift key
+         */
+        public BitmapDrawable[] layers;
 
         public KeyHolder(Key key) {
             this.key = key;
         }
+
+        public void setKey(Key key) {
+            if (this.key != key) {
+                this.key = key;
+                lowerLabel = null;
+                upperLabel = null;
+                clearLayers();
+            }
+        }
+
+        public void clearLayers() {
+            if (layers != null) {
+                Arrays.fill(layers, null);
+            }
+        }
+
+        public boolean isCaseDependent() {
+            return key.icon == null && key.label != null;
+        }
     }
 
     public void setCapsLockDrawable(Drawable drawable) {
         mCustomCapsLockDrawable = drawable;
+        clearKeyLayers();
     }
 
     public void setKeyTextColor(int color) {
+        if (mKeyTextColor == color) {
+            return;
+        }
+
         mKeyTextColor = color;
+        mKeyColorFilter = new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_IN);
+        updateKeyColors();
+    }
+
+    /**
+     * NOTE: Text keys are alpha masks so theme change doesn't require re-rendering
+     */
+    private void updateKeyColors() {
+        if (mRenderMode == RENDER_MODE_CANVAS) {
+            invalidate();
+            return;
+        }
+
+        if (mKeyImageViews != null) {
+            for (int i = 0; i < mKeyImageViews.length; i++) {
+                updateKeyColor(mKeyImageViews[i]);
+            }
+        }
+    }
+
+    private void updateKeyColor(ImageView image) {
+        Drawable drawable = image.getDrawable();
+
+        if (drawable instanceof BitmapDrawable && isAlphaMask(((BitmapDrawable) drawable).getBitmap())) {
+            image.setColorFilter(mKeyColorFilter);
+        } else {
+            image.clearColorFilter();
+        }
+    }
+
+    private static boolean isAlphaMask(Bitmap bitmap) {
+        return bitmap.getConfig() == Config.ALPHA_8;
+    }
+
+    /**
+     * NOTE: Pre-rendered layers are valid only for current theme
+     */
+    private void clearKeyLayers() {
+        if (mKeys != null) {
+            for (KeyHolder holder : mKeys) {
+                holder.clearLayers();
+            }
+        }
     }
 }
@@ -59,8 +59,8 @@ public class LeanbackUtils {
 
     }
 
-    public static int getAmpersandLocation(InputConnection connection) {
-        String text = getEditorText(connection);
+    static int getAmpersandLocation(EditorText editorText) {
+        String text = getEditorText(editorText);
         int pos = text.indexOf(64);
         if (pos < 0) { // not found
             pos = text.length();
@@ -69,39 +69,37 @@ public class LeanbackUtils {
         return pos;
     }
 
-    public static int getCharLengthAfterCursor(InputConnection connection) {
-        int len = 0;
-        CharSequence after = connection.getTextAfterCursor(1000, 0);
-        if (after != null) {
-            len = after.length();
-        }
-
-        return len;
+    static int getCharLengthAfterCursor(EditorText editorText) {
+        return editorText.getLengthAfterCursor();
     }
 
-    public static int getCharLengthBeforeCursor(InputConnection connection) {
-        int len = 0;
-        CharSequence before = connection.getTextBeforeCursor(1000, 0);
-        if (before != null) {
-            len = before.length();
-        }
-
-        return len;
+    static int getCharLengthBeforeCursor(EditorText editorText) {
+        return editorText.getLengthBeforeCursor();
     }
 
-    public static String getEditorText(InputConnection connection) {
-        StringBuilder result = new StringBuilder();
-        CharSequence before = connection.getTextBeforeCursor(1000, 0);
-        CharSequence after = connection.getTextAfterCursor(1000, 0);
-        if (before != null) {
-            result.append(before);
+    /**
+     * Length of the word before cursor including spaces after it
+     */
+    static int getWordLengthBeforeCursor(EditorText editorText) {
+        CharSequence text = editorText.getTextBeforeCursor();
+        int pos = text.length();
+
+        while (pos > 0 && Character.isWhitespace(text.charAt(pos - 1))) {
+            pos--;
         }
 
-        if (after != null) {
-            result.append(after);
+        while (pos > 0 && !Character.isWhitespace(text.charAt(pos - 1))) {
+            pos--;
         }
 
-        return result.toString();
+        return text.length() - pos;
+    }
+
+    /**
+     * NOTE: selected text is included
+     */
+    static String getEditorText(EditorText editorText) {
+        return editorText.getText();
     }
 
     public static void sendEnterKey(InputConnection connection) {
@@ -0,0 +1,87 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+import android.util.Log;
+import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.CompiledLayouts;
+import com.liskovsoft.leankeyboard.addons.resize.KeyboardWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Parsed accent popup keyboards (accent_*.xml) by resource id.<br/>
+ * Parsing is done in the background when layout is loaded, so long press doesn't touch xml.
+ */
+class PopupKeyboardCache {
+    private static final String TAG = PopupKeyboardCache.class.getSimpleName();
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private final Context mContext;
+    private final ConcurrentHashMap<Integer, Keyboard> mKeyboards = new ConcurrentHashMap<>();
+
+    PopupKeyboardCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * NOTE: Returned keys are copies, so they could be modified freely
+     */
+    List<Key> getKeys(int popupResId) {
+        Keyboard keyboard = getKeyboard(popupResId);
+        List<Key> keys = keyboard.getKeys();
+        List<Key> result = new ArrayList<>(keys.size());
+        Keyboard.Row row = new Keyboard.Row(keyboard);
+
+        for (Key key : keys) {
+            result.add(KeyboardWrapper.copyKey(row, key));
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse popup keyboards of the layout in the background
+     */
+    void warmUp(Keyboard keyboard) {
+        final List<Integer> resIds = new ArrayList<>();
+
+        for (Key key : keyboard.getKeys()) {
+            if (key.popupResId != 0 && !mKeyboards.containsKey(key.popupResId) && !resIds.contains(key.popupResId)) {
+                resIds.add(key.popupResId);
+            }
+        }
+
+        if (resIds.isEmpty()) {
+            return;
+        }
+
+        sExecutor.execute(() -> {
+            for (int resId : resIds) {
+                try {
+                    getKeyboard(resId);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Can't parse popup keyboard: " + resId, e);
+                }
+            }
+        });
+    }
+
+    private Keyboard getKeyboard(int popupResId) {
+        Keyboard keyboard = mKeyboards.get(popupResId);
+
+        if (keyboard == null) {
+            keyboard = CompiledLayouts.load(mContext, popupResId);
+            Keyboard prev = mKeyboards.putIfAbsent(popupResId, keyboard);
+
+            if (prev != null) {
+                keyboard = prev;
+            }
+        }
+
+        return keyboard;
+    }
+}
@@ -18,6 +18,7 @@ public final class LeanKeyPreferences {
     private static final String SUGGESTIONS_ENABLED = "suggestionsEnabled";
     private static final String CYCLIC_NAVIGATION_ENABLED = "cyclicNavigationEnabled";
     private static final String AUTODETECT_LAYOUT = "autodetectLayout";
+    private static final String SINGLE_VIEW_RENDERING_ENABLED = "singleViewRenderingEnabled";
     private static LeanKeyPreferences sInstance;
     private final Context mContext;
     private SharedPreferences mPrefs;
@@ -116,4 +117,14 @@ public final class LeanKeyPreferences {
     public boolean getAutodetectLayout() {
         return mPrefs.getBoolean(AUTODETECT_LAYOUT, false);
     }
+
+    public void setSingleViewRenderingEnabled(boolean enabled) {
+        mPrefs.edit()
+                .putBoolean(SINGLE_VIEW_RENDERING_ENABLED, enabled)
+                .apply();
+    }
+
+    public boolean getSingleViewRenderingEnabled() {
+        return mPrefs.getBoolean(SINGLE_VIEW_RENDERING_ENABLED, false);
+    }
 }
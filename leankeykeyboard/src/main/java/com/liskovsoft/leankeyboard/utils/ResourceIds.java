@@ -0,0 +1,77 @@
+package com.liskovsoft.leankeyboard.utils;
+
+import android.content.res.Resources;
+import android.util.Log;
+import com.liskovsoft.leankeykeyboard.R;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves resource ids by name.<br/>
+ * Own resources are taken from the table generated at build time (see restables.gradle).<br/>
+ * Everything else falls back to {@link Resources#getIdentifier}.<br/>
+ * NOTE: Only found own resources are cached. Add-on packages could be updated or removed at any time,
+ * so their ids aren't cached.
+ */
+public final class ResourceIds {
+    private static final String TAG = ResourceIds.class.getSimpleName();
+    private static final Map<String, Integer> sTable = new HashMap<>(ResourceTable.SIZE * 2);
+    private static final Map<String, Integer> sResolved = new ConcurrentHashMap<>();
+
+    static {
+        ResourceTable.fill(sTable);
+    }
+
+    private ResourceIds() {
+    }
+
+    /**
+     * Own resource
+     * @return 0 if not found
+     */
+    public static int get(Resources res, String type, String name) {
+        return get(res, type + "/" + name);
+    }
+
+    /**
+     * Own resource
+     * @param typeAndName e.g. xml/shift_1
+     * @return 0 if not found
+     */
+    public static int get(Resources res, String typeAndName) {
+        Integer resId = sTable.get(typeAndName);
+
+        if (resId != null) {
+            return resId;
+        }
+
+        return resolve(res, typeAndName);
+    }
+
+    /**
+     * Resource of the other package (e.g. add-on)
+     * @return 0 if not found
+     */
+    public static int get(Resources res, String packageName, String type, String name) {
+        return res.getIdentifier(type + "/" + name, null, packageName);
+    }
+
+    private static int resolve(Resources res, String typeAndName) {
+        Integer resId = sResolved.get(typeAndName);
+
+        if (resId != null) {
+            return resId;
+        }
+
+        Log.w(TAG, "Resource isn't in the table: " + typeAndName);
+        int id = res.getIdentifier(typeAndName, null, res.getResourcePackageName(R.xml.empty_kbd));
+
+        if (id != 0) {
+            sResolved.put(typeAndName, id);
+        }
+
+        return id;
+    }
+}
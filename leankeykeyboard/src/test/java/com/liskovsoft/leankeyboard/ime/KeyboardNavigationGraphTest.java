@@ -0,0 +1,67 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.Keyboard;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Layout used in tests:<br/>
+ * <pre>
+ * | 0 | 1 | 2 |
+ * | 3 |   4   |
+ * </pre>
+ */
+public class KeyboardNavigationGraphTest {
+    private static final int KEY_SIZE = 10;
+    private KeyboardNavigationGraph mGraph;
+    private KeyboardSpatialIndex mIndex;
+
+    @Before
+    public void setUp() {
+        int[] xs = {0, 10, 20, 0, 10};
+        int[] ys = {0, 0, 0, 10, 10};
+        int[] widths = {KEY_SIZE, KEY_SIZE, KEY_SIZE, KEY_SIZE, KEY_SIZE * 2};
+        int[] heights = {KEY_SIZE, KEY_SIZE, KEY_SIZE, KEY_SIZE, KEY_SIZE};
+        int[] edgeFlags = {Keyboard.EDGE_LEFT, 0, Keyboard.EDGE_RIGHT, Keyboard.EDGE_LEFT, Keyboard.EDGE_RIGHT};
+
+        mIndex = new KeyboardSpatialIndex(xs, ys, widths, heights);
+        mGraph = new KeyboardNavigationGraph(xs, ys, widths, heights, edgeFlags, mIndex, LeanbackKeyboardContainer.DIRECTION_STEP_MULTIPLIER);
+    }
+
+    @Test
+    public void testSpatialIndex() {
+        assertEquals(0, mIndex.find(-5, -5));
+        assertEquals(1, mIndex.find(15, 5));
+        assertEquals(4, mIndex.find(25, 15));
+        assertEquals(4, mIndex.find(1000, 1000));
+    }
+
+    @Test
+    public void testHorizontalMoves() {
+        assertEquals(1, mGraph.getNext(0, LeanbackKeyboardContainer.DIRECTION_RIGHT));
+        assertEquals(0, mGraph.getNext(1, LeanbackKeyboardContainer.DIRECTION_LEFT));
+        assertEquals(3, mGraph.getNext(4, LeanbackKeyboardContainer.DIRECTION_LEFT));
+        assertEquals(KeyboardNavigationGraph.TARGET_ACTION, mGraph.getNext(2, LeanbackKeyboardContainer.DIRECTION_RIGHT));
+        assertEquals(KeyboardNavigationGraph.TARGET_NONE, mGraph.getNext(0, LeanbackKeyboardContainer.DIRECTION_LEFT));
+    }
+
+    @Test
+    public void testVerticalMoves() {
+        assertEquals(KeyboardNavigationGraph.TARGET_NORTH, mGraph.getNext(1, LeanbackKeyboardContainer.DIRECTION_UP));
+        assertEquals(4, mGraph.getNext(1, LeanbackKeyboardContainer.DIRECTION_DOWN));
+        assertEquals(4, mGraph.getNext(2, LeanbackKeyboardContainer.DIRECTION_DOWN));
+        assertEquals(2, mGraph.getNext(4, LeanbackKeyboardContainer.DIRECTION_UP));
+        assertEquals(KeyboardNavigationGraph.TARGET_NONE, mGraph.getNext(3, LeanbackKeyboardContainer.DIRECTION_DOWN));
+    }
+
+    @Test
+    public void testCyclicMoves() {
+        assertEquals(2, mGraph.getWrap(0, LeanbackKeyboardContainer.DIRECTION_LEFT));
+        assertEquals(3, mGraph.getWrap(4, LeanbackKeyboardContainer.DIRECTION_RIGHT));
+        assertEquals(1, mGraph.getWrap(4, LeanbackKeyboardContainer.DIRECTION_DOWN));
+        assertEquals(3, mGraph.getWrap(0, LeanbackKeyboardContainer.DIRECTION_UP));
+        assertEquals(KeyboardNavigationGraph.TARGET_NONE, mGraph.getWrap(3, LeanbackKeyboardContainer.DIRECTION_RIGHT));
+    }
+}
@@ -0,0 +1,81 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Irregular layout used in tests (key 3 spans two rows, gaps are marked with dots):<br/>
+ * <pre>
+ * | 0 |   1   |.| 2 |.|   |
+ * | 4 |.|      5      |.| 3 |
+ * ......................
+ * |           6           |
+ * </pre>
+ */
+public class KeyboardSpatialIndexTest {
+    private KeyboardSpatialIndex mIndex;
+
+    @Before
+    public void setUp() {
+        int[] xs = {0, 10, 34, 46, 0, 10, 0};
+        int[] ys = {0, 0, 0, 0, 10, 10, 24};
+        int[] widths = {10, 20, 10, 10, 8, 34, 56};
+        int[] heights = {10, 10, 10, 20, 10, 10, 10};
+
+        mIndex = new KeyboardSpatialIndex(xs, ys, widths, heights);
+    }
+
+    @Test
+    public void testVariableWidths() {
+        assertEquals(0, mIndex.find(5, 5));
+        assertEquals(1, mIndex.find(11, 5));
+        assertEquals(1, mIndex.find(29, 5));
+        assertEquals(2, mIndex.find(40, 5));
+    }
+
+    @Test
+    public void testWideSpace() {
+        assertEquals(5, mIndex.find(11, 15));
+        assertEquals(5, mIndex.find(27, 15));
+        assertEquals(5, mIndex.find(43, 15));
+    }
+
+    @Test
+    public void testGapsBetweenKeys() {
+        // gap is split in the middle
+        assertEquals(1, mIndex.find(31, 5));
+        assertEquals(2, mIndex.find(33, 5));
+        assertEquals(4, mIndex.find(8, 15));
+        assertEquals(5, mIndex.find(9, 15));
+        assertEquals(5, mIndex.find(44, 15));
+        assertEquals(3, mIndex.find(45, 15));
+    }
+
+    @Test
+    public void testGapsBetweenRows() {
+        assertEquals(4, mIndex.find(5, 21));
+        assertEquals(6, mIndex.find(5, 23));
+        assertEquals(3, mIndex.find(50, 21));
+        assertEquals(6, mIndex.find(50, 23));
+    }
+
+    @Test
+    public void testKeySpanningTwoRows() {
+        assertEquals(3, mIndex.find(50, 5));
+        assertEquals(3, mIndex.find(50, 15));
+        assertEquals(3, mIndex.find(55, 19));
+        // tall key doesn't stretch the top row over the next one
+        assertEquals(4, mIndex.find(5, 11));
+        assertEquals(5, mIndex.find(20, 11));
+    }
+
+    @Test
+    public void testOutsideOfKeyboard() {
+        assertEquals(0, mIndex.find(-5, -5));
+        assertEquals(3, mIndex.find(100, -5));
+        assertEquals(6, mIndex.find(-5, 100));
+        assertEquals(6, mIndex.find(100, 100));
+    }
+}